@@ -0,0 +1,483 @@
+package benchmark;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import core.Assembler;
+import core.Engine;
+import core.EngineType;
+import core.MachineConfiguration;
+import core.MachineOutput;
+import core.MachineSnapshot;
+import core.Program;
+import core.SnapshotPublisher;
+import misc.Config;
+
+//Measures how fast programs run, in steps per second, and how much they allocate per step
+//Every workload is run on every engine, headless and with the UI's update path attached
+//
+//Each measurement warms up first so the JIT has settled, then resets and reruns the same program until the time is up
+//Programs run on an Engine and send snapshots through the same SnapshotPublisher as the window, so this measures what it pays for
+//Remembered subroutine calls are forgotten before every rerun, so each run only gains from what it remembered itself
+//Allocation is read from the running thread with com.sun.management.ThreadMXBean,
+//so in the attached modes what the Swing thread allocates isn't included
+public class Benchmark {
+
+	private static final String usage =
+			"Usage: Benchmark [options]\n" +
+			"  --warmup <seconds>   How long to run each measurement before timing it, 1 by default\n" +
+			"  --time <seconds>     How long to time each measurement, 2 by default\n" +
+			"  --engine <name>      Only measure one engine\n" +
+			"  --workload <name>    Only measure one workload\n" +
+			"  --mode <name>        Only measure one of headless, turbo or step\n" +
+			"  --programs <folder>  Where fib.A1, mathlib.A1 and stringbuffer.A1 are, the current folder by default\n";
+
+	//How many steps a program may take in one run, so the ones that never end still finish
+	private static final long stepCap = 1000000;
+
+	/*
+	 * Synthetic kernels
+	 */
+
+	//Arithmetic and shifts with one branch per iteration
+	private static final String[] aluKernel = {
+		"MOV 0 R1",
+		"LOOP:",
+		"	ASR R1 2 R2",
+		"	ADD R2 R2 R3",
+		"	ASL R3 1 R4",
+		"	SUB R4 R1 R5",
+		"	ADD R1 1 R1",
+		"	BLT R1 30000 LOOP",
+	};
+
+	//Sweeps main memory reading and writing every address
+	private static final String[] memoryKernel = {
+		"MOV 0 R0",
+		"PASS:",
+		"	MOV 0 MH",
+		"	FILL:",
+		"		STORE R0",
+		"		LOAD R2",
+		"		ADD R2 1 R2",
+		"		STORE R2",
+		"		ADD MH 1 MH",
+		"		BLT MH 9999 FILL",
+		"	ADD R0 1 R0",
+		"	BLT R0 20 PASS",
+	};
+
+	//Mostly branches, half of them taken
+	private static final String[] branchKernel = {
+		"MOV 0 R0",
+		"LOOP:",
+		"	ADD R0 1 R0",
+		"	ASR R0 1 R1",
+		"	ASL R1 1 R1",
+		"	BEQ R0 R1 EVEN",
+		"	ADD R2 1 R2",
+		"	BR NEXT",
+		"	EVEN:",
+		"	SUB R2 1 R2",
+		"	NEXT:",
+		"	BLT R0 30000 LOOP",
+	};
+
+	//mathlib's DIV with dividends big enough that its loop runs tens of thousands of times a call
+	//Every call has a new dividend so none of them are remembered, and each runs the whole loop inside the call
+	private static final String[] divisionKernel = {
+		"BR START",
+		"DIV:",
+		"	MOV 0 R3",
+		"	DIVLOOP:",
+		"		ADD 1 R3 R3",
+		"		SUB R0 R1 R0",
+		"		BLT R0 R1 DIVBREAK",
+		"		BR DIVLOOP",
+		"	DIVBREAK:",
+		"	MOV R0 R1",
+		"	MOV R3 R0",
+		"	MOV R2 PC",
+		"START:",
+		"MOV 30000 R5",
+		"AGAIN:",
+		"	MOV R5 R0",
+		"	MOV 1 R1",
+		"	MOV PC R2",
+		"	ADD 2 R2 R2",
+		"	BR DIV",
+		"	ADD R5 1 R5",
+		"	BLT R5 30008 AGAIN",
+	};
+
+	//The ways a machine can be driven
+	private enum Mode {
+
+		//Run to completion with nothing attached, like the headless runner
+		HEADLESS,
+
+		//Run like ProcessingLogic's turbo mode, publishing snapshots to the Swing thread Config.uiRefreshRate times a second
+		TURBO,
+
+		//Step one instruction at a time and publish a snapshot after every step, like ProcessingLogic.step
+		//Nothing is dropped, every step waits for room for its snapshot if the Swing thread is behind
+		//Single steps are always interpreted, so this is only measured once per workload
+		STEP
+
+	}
+
+	//A program to measure
+	private static class Workload {
+
+		public final String name;
+		public final String[] lines;
+
+		public Workload( String name, String[] lines ) {
+			this.name = name;
+			this.lines = lines;
+		}
+
+	}
+
+	//The result of one measurement
+	private static class Result {
+
+		public final long steps;
+		public final long snapshots;
+		public final long nanos;
+		public final long allocatedBytes;
+
+		public Result( long steps, long snapshots, long nanos, long allocatedBytes ) {
+			this.steps = steps;
+			this.snapshots = snapshots;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+	}
+
+	public static void main( String[] args ) {
+
+		//Options
+		double warmupSeconds = 1;
+		double timeSeconds = 2;
+		String engineName = null;
+		String workloadName = null;
+		String modeName = null;
+		String programFolder = ".";
+
+		for (int i = 0; i < args.length; i++) {
+
+			if( i + 1 >= args.length ) {
+				exitWithUsage();
+			}
+
+			try {
+				if( args[ i ].equals( "--warmup" ) ) {
+					warmupSeconds = Double.parseDouble( args[ ++i ] );
+				}else if( args[ i ].equals( "--time" ) ) {
+					timeSeconds = Double.parseDouble( args[ ++i ] );
+				}else if( args[ i ].equals( "--engine" ) ) {
+					engineName = args[ ++i ];
+				}else if( args[ i ].equals( "--workload" ) ) {
+					workloadName = args[ ++i ];
+				}else if( args[ i ].equals( "--mode" ) ) {
+					modeName = args[ ++i ];
+				}else if( args[ i ].equals( "--programs" ) ) {
+					programFolder = args[ ++i ];
+				}else {
+					exitWithUsage();
+				}
+			} catch ( NumberFormatException e ) {
+				exitWithUsage();
+			}
+
+		}
+
+		//Collect the workloads
+		List<Workload> workloads = new ArrayList<Workload>();
+		for( String sample : new String[] { "fib", "mathlib", "stringbuffer" } ) {
+			String fileName = sample + "." + Config.fileExtension;
+			try {
+				String code = new String( Files.readAllBytes( Paths.get( programFolder, fileName ) ), Charset.forName( "UTF-8" ) );
+				workloads.add( new Workload( sample, code.split( "\\r?\\n", -1 ) ) );
+			} catch ( IOException e ) {
+				System.err.println( "Skipping " + fileName + ": " + e.getMessage() );
+			}
+		}
+		workloads.add( new Workload( "alu", aluKernel ) );
+		workloads.add( new Workload( "memory", memoryKernel ) );
+		workloads.add( new Workload( "branch", branchKernel ) );
+		workloads.add( new Workload( "division", divisionKernel ) );
+
+		long warmupNanos = (long) ( warmupSeconds * 1e9 );
+		long timeNanos = (long) ( timeSeconds * 1e9 );
+
+		System.out.println( String.format( "%-14s %-12s %-9s %14s %12s %12s", "Workload", "Engine", "Mode", "Steps/s", "Bytes/step", "Snapshots" ) );
+
+		for( Workload workload : workloads ) {
+
+			if( workloadName != null && !workload.name.equalsIgnoreCase( workloadName ) ) {
+				continue;
+			}
+
+			Program program = new Assembler().assemble( workload.lines );
+
+			for( Mode mode : Mode.values() ) {
+
+				if( modeName != null && !mode.name().equalsIgnoreCase( modeName ) ) {
+					continue;
+				}
+
+				for( EngineType engine : EngineType.values() ) {
+
+					if( engineName != null && !engine.name().equalsIgnoreCase( engineName ) ) {
+						continue;
+					}
+
+					//Stepping never uses the engine
+					if( mode == Mode.STEP && engine != EngineType.INTERPRETER ) {
+						continue;
+					}
+
+					//A fresh engine for each measurement so nothing compiled for one engine helps another
+					MachineConfiguration configuration = new MachineConfiguration();
+					configuration.engineType = engine;
+					Engine runner = new Engine( program, configuration );
+					runner.addListener( mode == Mode.HEADLESS ? new DiscardingOutput() : new SwingOutput() );
+
+					measure( runner, mode, warmupNanos );
+					Result result = measure( runner, mode, timeNanos );
+
+					double stepsPerSecond = result.steps / ( result.nanos / 1e9 );
+					double bytesPerStep = result.allocatedBytes < 0 ? Double.NaN : (double) result.allocatedBytes / result.steps;
+
+					System.out.println( String.format( "%-14s %-12s %-9s %14s %12.3f %12d",
+							workload.name, engine.name().toLowerCase(), mode.name().toLowerCase(), formatRate( stepsPerSecond ), bytesPerStep, result.snapshots ) );
+
+				}
+
+			}
+
+		}
+
+		System.exit( 0 );
+
+	}
+
+	//Prints the usage and exits
+	private static void exitWithUsage() {
+		System.err.print( usage );
+		System.exit( 1 );
+	}
+
+	//Formats a rate with a metric suffix
+	private static String formatRate( double rate ) {
+		if( rate >= 1e9 ) {
+			return String.format( "%.2fG", rate / 1e9 );
+		}else if( rate >= 1e6 ) {
+			return String.format( "%.2fM", rate / 1e6 );
+		}else if( rate >= 1e3 ) {
+			return String.format( "%.2fK", rate / 1e3 );
+		}
+		return String.format( "%.2f", rate );
+	}
+
+	//Runs a program over and over for at least a given time
+	private static Result measure( Engine engine, Mode mode, long nanos ) {
+
+		long startBytes = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + nanos;
+
+		long steps = 0;
+		long snapshotsBefore = snapshotCount;
+		long now = start;
+
+		while( now < end ) {
+
+			engine.getSubroutineCache().clear();
+			engine.reset();
+
+			switch( mode ) {
+			case HEADLESS:
+				steps += engine.run( stepCap );
+				break;
+			case TURBO:
+				steps += runTurbo( engine );
+				break;
+			case STEP:
+				steps += runSteps( engine, end );
+				break;
+			}
+
+			now = System.nanoTime();
+		}
+
+		long allocated = allocatedBytes() - startBytes;
+
+		return new Result( steps, snapshotCount - snapshotsBefore, now - start, startBytes < 0 ? -1 : allocated );
+	}
+
+	//Runs like ProcessingLogic.turbo, with a timer asking the engine to stop for a snapshot once a frame
+	private static long runTurbo( final Engine engine ) {
+
+		Timer frameTimer = new Timer( 1000 / Config.uiRefreshRate, new ActionListener() {
+
+			@Override
+			public void actionPerformed( ActionEvent e ) {
+				engine.requestStop();
+			}
+
+		});
+		frameTimer.start();
+
+		long steps = 0;
+
+		while( steps < stepCap && engine.hasNextLine() ) {
+			steps += engine.run( stepCap - steps );
+			publish( engine, false );
+		}
+
+		frameTimer.stop();
+
+		publish( engine, true );
+
+		return steps;
+	}
+
+	//Steps like ProcessingLogic.step, with a snapshot after every step
+	//Stops at the end time too since stepping a long program takes a while
+	private static long runSteps( Engine engine, long end ) {
+
+		long steps = 0;
+
+		while( steps < stepCap && engine.hasNextLine() ) {
+			engine.step();
+			publish( engine, true );
+			steps++;
+
+			if( ( steps & 1023 ) == 0 && System.nanoTime() >= end ) {
+				break;
+			}
+		}
+
+		return steps;
+	}
+
+	/*
+	 * The UI's side of things
+	 */
+
+	//Something for the Swing thread to do with what it's given so it isn't optimized away
+	private static final AtomicLong checksum = new AtomicLong();
+
+	//The Swing thread reads everything a window would show instead of painting it
+	private static final SnapshotPublisher snapshots = new SnapshotPublisher( new SnapshotPublisher.Viewer() {
+
+		@Override
+		public void show( MachineSnapshot snapshot ) {
+
+			long sum = 0;
+			for( int value : snapshot.registers ) {
+				sum += value;
+			}
+			for( int value : snapshot.memoryValues ) {
+				sum += value;
+			}
+			if( snapshot.stringBuffer != null ) {
+				sum += snapshot.stringBuffer.length;
+			}
+			checksum.addAndGet( sum );
+
+		}
+
+	});
+
+	//How many snapshots have been sent, only touched by the thread running the engine
+	private static long snapshotCount = 0;
+
+	//Sends a snapshot the way ProcessingLogic.publishSnapshot does
+	//The window waits a frame for room for one that has to be shown, here it's waited for straight away so every one is counted
+	private static void publish( Engine engine, boolean force ) {
+
+		boolean isSent = snapshots.publish( engine, force );
+
+		while( !isSent && snapshots.isSnapshotOwed() ) {
+			Thread.yield();
+			isSent = snapshots.publish( engine, true );
+		}
+
+		if( isSent ) {
+			snapshotCount++;
+		}
+
+	}
+
+	//Returns how many bytes the running thread has allocated, or -1 if the JVM can't tell us
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if( bean instanceof com.sun.management.ThreadMXBean ) {
+			return ( (com.sun.management.ThreadMXBean) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		}
+		return -1;
+	}
+
+	//Throws away everything a program prints
+	private static class DiscardingOutput implements MachineOutput {
+
+		@Override
+		public void print( CharSequence text ) {}
+
+		@Override
+		public void error( int line, String str ) {}
+
+		@Override
+		public void clearConsole() {}
+
+	}
+
+	//Sends everything a program prints to the Swing thread, like ProcessingLogic
+	private static class SwingOutput implements MachineOutput {
+
+		@Override
+		public void print( CharSequence text ) {
+			final String str = text.toString();
+			SwingUtilities.invokeLater( new Runnable() {
+
+				@Override
+				public void run() {
+					checksum.addAndGet( str.length() );
+				}
+
+			});
+		}
+
+		@Override
+		public void error( final int line, final String str ) {
+			SwingUtilities.invokeLater( new Runnable() {
+
+				@Override
+				public void run() {
+					checksum.addAndGet( line );
+				}
+
+			});
+		}
+
+		@Override
+		public void clearConsole() {}
+
+	}
+
+}
@@ -0,0 +1,389 @@
+package core;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import misc.Strings;
+
+//Turns source code into a Program once per run so stepping doesn't have to parse any text
+public class Assembler {
+
+	//Returned by decodeTarget when a branch target can't be found
+	private static final int UNKNOWN_TARGET = -2;
+
+	//Returned by parseNumber when the text isn't a number
+	private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+	//What programs are assembled with, which says whether they're optimized and have their pure subroutines found
+	//and what shape of machine they run on
+	private final MachineConfiguration configuration;
+
+	//Assembles programs the way Config says to
+	public Assembler() {
+		this( new MachineConfiguration() );
+	}
+
+	//Assembles programs the way a configuration says to
+	public Assembler( MachineConfiguration configuration ) {
+		this.configuration = configuration.copy();
+	}
+
+	//Assembles lines of source code into a program
+	public Program assemble( String[] lines ) {
+
+		int lineCount = lines.length;
+
+		//Labels and their associated lines
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+
+		//Errors found before decoding, the Verifier adds the rest
+		List<Program.AssemblyError> errors = new ArrayList<Program.AssemblyError>();
+
+		//Whether each line contains code that can be executed
+		boolean[] isExecutable = new boolean[ lineCount ];
+
+		//The lines in the case and spacing they're decoded with
+		String[] cleanLines = new String[ lineCount ];
+
+		//First pass, find labels and executable lines
+		for (int i = 0; i < lineCount; i++) {
+
+			String line = lines[ i ].toUpperCase().trim();
+			cleanLines[ i ] = line;
+
+			//Comments and blank lines are skipped entirely
+			if( line.startsWith( "#" ) || line.length() == 0 ) {
+				continue;
+			}
+
+			//Check if it's a label
+			if( line.endsWith( ":" ) ) {
+
+				//Get the name without the ending
+				String labelName = line.substring( 0, line.length() - 1 );
+
+				//Remember, no spaces
+				if( labelName.indexOf( " " ) != -1 ) {
+					errors.add( new Program.AssemblyError( i, Strings.LabelContainedSpaces ) );
+				}
+
+				//save it in the labels map
+				labels.put( labelName, i );
+
+				continue;
+			}
+
+			isExecutable[ i ] = true;
+		}
+
+		//Work backwards to find the next executable line after every line
+		int[] nextExecutableLines = new int[ lineCount + 1 ];
+		int nextExecutableLine = lineCount;
+		for (int i = lineCount - 1; i >= -1; i--) {
+			nextExecutableLines[ i + 1 ] = nextExecutableLine;
+
+			if( i >= 0 && isExecutable[ i ] ) {
+				nextExecutableLine = i;
+			}
+		}
+
+		Instruction[] instructions = new Instruction[ lineCount ];
+		Superinstruction[] superinstructions = new Superinstruction[ lineCount ];
+		Program program = new Program( instructions, nextExecutableLines, superinstructions, labels, errors, configuration );
+
+		//Second pass, decode every line
+		for (int i = 0; i < lineCount; i++) {
+
+			int next = nextExecutableLines[ i + 1 ];
+
+			if( isExecutable[ i ] ) {
+				instructions[ i ] = decode( cleanLines[ i ], i, next, program );
+			}else {
+				//Jumping directly onto a line that isn't code is an error
+				instructions[ i ] = Instruction.invalid( i, next, Strings.UnrecognizedOpcode );
+			}
+
+		}
+
+		//Prove everything the engines rely on once, so bad programs are turned away before they run
+		Verifier.verify( program );
+
+		//Take out the steps that don't need to be taken, if asked to
+		if( program.isVerified && configuration.optimize ) {
+			Optimizer.optimize( program );
+		}
+
+		//Third pass, fuse pairs of instructions that are common in loops
+		fuseInstructions( program );
+
+		//Find the writes to MH that can't go out of bounds
+		if( program.isVerified ) {
+			program.isSafeMemoryHeadWrite = RangeAnalysis.findSafeMemoryHeadWrites( program );
+		}
+
+		//Find the subroutines whose calls can be remembered, if asked to
+		if( program.isVerified && configuration.memoizeSubroutines ) {
+			program.subroutines = SubroutineAnalysis.findPureSubroutines( program );
+		}
+
+		return program;
+	}
+
+	//Fuses every pair of instructions that makes a superinstruction
+	//Only depends on the instructions, so it's also how a program read back by ProgramCache gets its superinstructions
+	static void fuseInstructions( Program program ) {
+
+		Instruction[] instructions = program.instructions;
+
+		for (int i = 0; i < instructions.length; i++) {
+
+			Instruction instruction = instructions[ i ];
+
+			if( instruction.opcode != Opcode.INVALID && instruction.next < instructions.length ) {
+				program.superinstructions[ i ] = Superinstruction.fuse( instruction, instructions[ instruction.next ] );
+			}
+
+		}
+
+	}
+
+	//Decodes a single line of code into an instruction
+	private Instruction decode( String line, int lineNumber, int next, Program program ) {
+
+		//Break the line apart by spaces as those are our delimiter
+		String[] splitLine = line.split( "\\s+" );
+
+		Opcode opcode = Opcode.fromName( splitLine[ 0 ] );
+
+		if( opcode == null ) {
+			return Instruction.invalid( lineNumber, next, Strings.UnrecognizedOpcode );
+		}
+
+		if( splitLine.length != opcode.argumentCount + 1 ) {
+			return Instruction.invalid( lineNumber, next, Strings.WrongNumberOfArguments );
+		}
+
+		//Decoded arguments
+		Operand a = null;
+		Operand b = null;
+		int destination = Instruction.LITERAL;
+		int target = -1;
+
+		switch( opcode ) {
+		case MOV:
+
+			a = decodeSource( splitLine[ 1 ], next );
+
+			//Check that B is a register
+			destination = indexOfRegister( splitLine[ 2 ] );
+			if( destination == -1 ) {
+				return Instruction.invalid( lineNumber, next, Strings.ArgumentIsNotRegister );
+			}
+
+			break;
+		case ADD:
+		case SUB:
+
+			a = decodeSource( splitLine[ 1 ], next );
+			b = decodeSource( splitLine[ 2 ], next );
+
+			//Process output register C
+			destination = indexOfRegister( splitLine[ 3 ] );
+			if( destination == -1 ) {
+				return Instruction.invalid( lineNumber, next, Strings.ArgumentIsNotRegister );
+			}
+
+			break;
+		case ASL:
+		case ASR:
+
+			a = decodeSource( splitLine[ 1 ], next );
+			b = decodeSource( splitLine[ 2 ], next );
+
+			destination = indexOfRegister( splitLine[ 3 ] );
+			if( destination == -1 ) {
+				return Instruction.invalid( lineNumber, next, Strings.InvalidRegisterReference );
+			}
+
+			break;
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+
+			a = decodeSource( splitLine[ 1 ], next );
+			b = decodeSource( splitLine[ 2 ], next );
+			target = decodeTarget( splitLine[ 3 ], program );
+
+			break;
+		case BR:
+
+			target = decodeTarget( splitLine[ 1 ], program );
+
+			break;
+		case LOAD:
+
+			destination = indexOfRegister( splitLine[ 1 ] );
+			if( destination == -1 ) {
+				return Instruction.invalid( lineNumber, next, Strings.InvalidRegisterReference );
+			}
+
+			break;
+		case STORE:
+		case APND:
+
+			a = decodeSource( splitLine[ 1 ], next );
+
+			break;
+		default:
+			break;
+		}
+
+		//Report the first argument that failed to decode
+		if( a != null && a.error != null ) {
+			return Instruction.invalid( lineNumber, next, a.error );
+		}
+		if( b != null && b.error != null ) {
+			return Instruction.invalid( lineNumber, next, b.error );
+		}
+		if( target == UNKNOWN_TARGET ) {
+			return Instruction.invalid( lineNumber, next, Strings.InvalidLabelReference );
+		}
+
+		return new Instruction(
+				opcode, lineNumber, next,
+				a == null ? Instruction.LITERAL : a.register, a == null ? 0 : a.value,
+				b == null ? Instruction.LITERAL : b.register, b == null ? 0 : b.value,
+				destination, target, null
+				);
+	}
+
+	//Decodes an argument that is read from, which may be a register or a literal
+	private Operand decodeSource( String argument, int next ) {
+		Operand operand = new Operand();
+
+		int register = indexOfRegister( argument );
+
+		//The program counter has already moved on to the next line when arguments are read
+		//so its value is known ahead of time
+		if( register == Registers.PC ) {
+			operand.value = next;
+			return operand;
+		}
+
+		if( register != -1 ) {
+			operand.register = register;
+			return operand;
+		}
+
+		//Otherwise it's a literal
+		long number = parseNumber( argument );
+		if( number == NOT_A_NUMBER ) {
+			//If this isn't a register, and it isn't a literal number, we don't know what it is then
+			operand.error = Strings.UnrecognizedDataType;
+			return operand;
+		}
+		operand.value = (int) number;
+
+		//Check the literal for out of bounds error
+		if( operand.value > configuration.maxNumberRange || operand.value < configuration.minNumberRange ) {
+			operand.error = String.format( Strings.NumberOutOfBounds, configuration.minNumberRange, configuration.maxNumberRange );
+		}
+
+		return operand;
+	}
+
+	//Decodes a branch target into the line the program counter moves to when the branch is taken
+	//Returns UNKNOWN_TARGET if the target is neither a line number nor a known label
+	private int decodeTarget( String argument, Program program ) {
+
+		int lineNumber;
+
+		//Check if this is a literal
+		long number = parseNumber( argument );
+		if( number != NOT_A_NUMBER ) {
+			lineNumber = (int) number - 1;
+		}else {
+
+			//If it's not a literal then it should be a label
+			Integer labelLine = program.labels.get( argument );
+			if( labelLine == null ) {
+				return UNKNOWN_TARGET;
+			}
+
+			lineNumber = labelLine;
+		}
+
+		//Branches land on the first executable line after their target
+		return program.getNextExecutableLine( lineNumber );
+	}
+
+	//Returns the slot of a register or -1 if the machine being assembled for has no register with that name
+	private int indexOfRegister( String name ) {
+		int register = Registers.indexOf( name );
+		return register < configuration.getRegisterSlots() ? register : -1;
+	}
+
+	//Reads a whole number the same way Integer.parseInt does, but returns NOT_A_NUMBER instead of throwing
+	//Most arguments are registers or labels, so not being a number is the usual case and shouldn't cost an exception
+	private static long parseNumber( String text ) {
+
+		int length = text.length();
+		int i = 0;
+
+		//An optional sign
+		boolean isNegative = false;
+		if( length > 0 && ( text.charAt( 0 ) == '-' || text.charAt( 0 ) == '+' ) ) {
+			isNegative = text.charAt( 0 ) == '-';
+			i++;
+		}
+
+		//There has to be at least one digit
+		if( i == length ) {
+			return NOT_A_NUMBER;
+		}
+
+		long value = 0;
+		for ( ; i < length; i++) {
+
+			int digit = Character.digit( text.charAt( i ), 10 );
+			if( digit == -1 ) {
+				return NOT_A_NUMBER;
+			}
+
+			value = value * 10 + digit;
+
+			//Anything that doesn't fit in an int isn't a number either
+			if( value > (long) Integer.MAX_VALUE + 1 ) {
+				return NOT_A_NUMBER;
+			}
+
+		}
+
+		if( isNegative ) {
+			value = -value;
+		}
+
+		if( value > Integer.MAX_VALUE ) {
+			return NOT_A_NUMBER;
+		}
+
+		return value;
+	}
+
+	//A source argument part way through being decoded
+	private static class Operand {
+
+		//The slot of the register to read from, or LITERAL
+		int register = Instruction.LITERAL;
+
+		//The literal value
+		int value;
+
+		//The error found while decoding, if any
+		String error;
+
+	}
+
+}
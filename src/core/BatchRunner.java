@@ -0,0 +1,413 @@
+package core;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import misc.Config;
+
+//Runs many A1 files at once with no window, spread across every core
+//Takes a folder, running every A1 file in it and the folders in it, or a manifest listing the files to run
+//Every program runs on an engine of its own, with its own step budget and timeout
+//A line of JSON describing how each one went is written to stdout as soon as it finishes, so lines come out in the order
+//programs finish rather than the order they were given in
+public class BatchRunner {
+
+	//Exit statuses
+	public static final int EXIT_ALL_PASSED = 0;
+	public static final int EXIT_SOME_FAILED = 1;
+	public static final int EXIT_BAD_USAGE = 3;
+
+	//Files next to a program in a folder with the same name and these extensions are put in memory first and compared to what it prints
+	private static final String memoryImageExtension = "mem";
+	private static final String expectedOutputExtension = "out";
+
+	private static final String usage =
+			"Usage: primary --batch [options] <folder or manifest>\n" +
+			"  A folder runs every ." + Config.fileExtension + " file in it, with name." + memoryImageExtension + " put into memory first and name." + expectedOutputExtension + " compared to what's printed if they exist\n" +
+			"  A manifest has a line per program: <file." + Config.fileExtension + "> [memory image or -] [expected output or -], with # starting a comment\n" +
+			"  Memory images are numbers separated by whitespace, put into memory from M0 onwards\n" +
+			"  --max-steps <n>      Stop each program after n steps\n" +
+			"  --timeout <ms>       Stop each program after this many milliseconds, 10000 by default and 0 for never\n" +
+			"  --threads <n>        Run this many programs at once, one for each core by default\n" +
+			"  --engine <name>      Run with the interpreter, closure, bytecode or tiered engine, " + Config.engine + " by default\n" +
+			"  --optimize           Fold constants, remove code that does nothing and skip over BRs before running\n" +
+			"  --no-memoize         Run every subroutine call instead of remembering the results of pure ones\n" +
+			"  --cache-dir <folder> Keep assembled programs in a folder, so code that hasn't changed is never assembled again\n";
+
+	//Everything to run, in the order given
+	private final List<Job> jobs;
+
+	//Limits on every program
+	private final long maxSteps;
+	private final long timeoutNanos;
+
+	//Where the results go, one line each
+	private final PrintStream out;
+
+	//What every program is assembled with and run on
+	private final MachineConfiguration configuration = new MachineConfiguration();
+
+	//Engines for programs to run on, never more than one for each thread
+	private final EnginePool pool;
+
+	//Programs already assembled, so files with the same code are only assembled once
+	private final ProgramCache programs;
+
+	//How many programs finished and printed what they should, and how many didn't
+	private final AtomicInteger passed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	public BatchRunner( List<Job> jobs, long maxSteps, long timeoutNanos, PrintStream out ) {
+		this.jobs = jobs;
+		this.maxSteps = maxSteps;
+		this.timeoutNanos = timeoutNanos;
+		this.out = out;
+
+		pool = new EnginePool( configuration, Integer.MAX_VALUE );
+		programs = new ProgramCache( configuration );
+	}
+
+	public static void main( String[] args ) {
+
+		//Options
+		long maxSteps = Long.MAX_VALUE;
+		long timeoutMillis = 10000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String pathName = null;
+
+		for (int i = 0; i < args.length; i++) {
+
+			if( args[ i ].equals( "--max-steps" ) && i + 1 < args.length ) {
+				i++;
+				try {
+					maxSteps = Long.parseLong( args[ i ] );
+				} catch ( NumberFormatException e ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--timeout" ) && i + 1 < args.length ) {
+				i++;
+				try {
+					timeoutMillis = Long.parseLong( args[ i ] );
+				} catch ( NumberFormatException e ) {
+					exitWithUsage();
+				}
+				if( timeoutMillis < 0 ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--threads" ) && i + 1 < args.length ) {
+				i++;
+				try {
+					threads = Integer.parseInt( args[ i ] );
+				} catch ( NumberFormatException e ) {
+					exitWithUsage();
+				}
+				if( threads < 1 ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--engine" ) && i + 1 < args.length ) {
+				i++;
+				if( EngineType.fromName( args[ i ] ) == null ) {
+					exitWithUsage();
+				}
+				Config.engine = args[ i ];
+			}else if( args[ i ].equals( "--optimize" ) ) {
+				Config.optimize = true;
+			}else if( args[ i ].equals( "--no-memoize" ) ) {
+				Config.memoizeSubroutines = false;
+			}else if( args[ i ].equals( "--cache-dir" ) && i + 1 < args.length ) {
+				i++;
+				Config.programCacheFolder = args[ i ];
+			}else if( pathName == null && !args[ i ].startsWith( "--" ) ) {
+				pathName = args[ i ];
+			}else {
+				exitWithUsage();
+			}
+
+		}
+
+		if( pathName == null ) {
+			exitWithUsage();
+		}
+
+		//Find everything to run
+		List<Job> jobs = null;
+		Path path = Paths.get( pathName );
+		try {
+			jobs = Files.isDirectory( path ) ? findJobs( path ) : readManifest( path );
+		} catch ( IOException e ) {
+			System.err.println( "Could not read " + pathName + ": " + e.getMessage() );
+			System.exit( EXIT_BAD_USAGE );
+		}
+
+		PrintStream out = new PrintStream( new BufferedOutputStream( new FileOutputStream( FileDescriptor.out ), 1 << 16 ), false );
+
+		long timeoutNanos = timeoutMillis == 0 ? Long.MAX_VALUE : timeoutMillis * 1000000;
+		BatchRunner runner = new BatchRunner( jobs, maxSteps, timeoutNanos, out );
+
+		long start = System.nanoTime();
+		runner.run( threads );
+		long elapsed = System.nanoTime() - start;
+
+		out.close();
+		System.err.println( "Ran " + jobs.size() + " programs in " + ( elapsed / 1000000 ) + " ms: " + runner.getPassed() + " passed, " + runner.getFailed() + " failed" );
+		System.err.println( "Programs assembled: " + runner.programs.getMisses() + ", found in memory: " + runner.programs.getMemoryHits() + ", found on disk: " + runner.programs.getDiskHits() );
+		System.exit( runner.getFailed() == 0 ? EXIT_ALL_PASSED : EXIT_SOME_FAILED );
+
+	}
+
+	//Prints the usage and exits
+	private static void exitWithUsage() {
+		System.err.print( usage );
+		System.exit( EXIT_BAD_USAGE );
+	}
+
+	//Returns a job for every A1 file in a folder and the folders in it, in name order
+	private static List<Job> findJobs( Path folder ) throws IOException {
+
+		List<Path> programs = new ArrayList<Path>();
+		Stream<Path> paths = Files.walk( folder );
+		try {
+			Iterator<Path> iterator = paths.iterator();
+			while( iterator.hasNext() ) {
+				Path path = iterator.next();
+				if( Files.isRegularFile( path ) && path.getFileName().toString().endsWith( "." + Config.fileExtension ) ) {
+					programs.add( path );
+				}
+			}
+		} finally {
+			paths.close();
+		}
+		Collections.sort( programs );
+
+		List<Job> jobs = new ArrayList<Job>();
+		for( Path program : programs ) {
+			jobs.add( new Job( program, findSibling( program, memoryImageExtension ), findSibling( program, expectedOutputExtension ) ) );
+		}
+
+		return jobs;
+	}
+
+	//Returns the file next to a program with the same name and another extension, or null if there isn't one
+	private static Path findSibling( Path program, String extension ) {
+		String name = program.getFileName().toString();
+		Path sibling = program.resolveSibling( name.substring( 0, name.length() - Config.fileExtension.length() ) + extension );
+		return Files.isRegularFile( sibling ) ? sibling : null;
+	}
+
+	//Returns a job for every line of a manifest, in the order they're listed
+	//Files are found relative to the manifest
+	private static List<Job> readManifest( Path manifest ) throws IOException {
+
+		Path folder = manifest.toAbsolutePath().getParent();
+		List<Job> jobs = new ArrayList<Job>();
+
+		List<String> lines = Files.readAllLines( manifest, Charset.forName( "UTF-8" ) );
+		for (int i = 0; i < lines.size(); i++) {
+
+			String line = lines.get( i );
+			int commentStart = line.indexOf( '#' );
+			if( commentStart != -1 ) {
+				line = line.substring( 0, commentStart );
+			}
+			line = line.trim();
+			if( line.isEmpty() ) {
+				continue;
+			}
+
+			String[] columns = line.split( "\\s+" );
+			if( columns.length > 3 ) {
+				throw new IOException( "line " + ( i + 1 ) + " has more than three files" );
+			}
+
+			jobs.add( new Job(
+					folder.resolve( columns[ 0 ] ),
+					columns.length > 1 ? resolveOptional( folder, columns[ 1 ] ) : null,
+					columns.length > 2 ? resolveOptional( folder, columns[ 2 ] ) : null
+					) );
+		}
+
+		return jobs;
+	}
+
+	//Returns where a file listed in a manifest is, or null if it's - for none
+	private static Path resolveOptional( Path folder, String name ) {
+		return name.equals( "-" ) ? null : folder.resolve( name );
+	}
+
+	//Runs every job on a pool of threads, writing each result as it finishes
+	public void run( int threads ) {
+
+		if( jobs.isEmpty() ) {
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool( threads );
+		try {
+			pool.invoke( new RunJobs( 0, jobs.size() ) );
+		} finally {
+			pool.shutdown();
+		}
+
+	}
+
+	//Returns how many programs finished and printed what they should
+	public int getPassed() {
+		return passed.get();
+	}
+
+	//Returns how many programs didn't
+	public int getFailed() {
+		return failed.get();
+	}
+
+	//Runs a range of jobs, splitting it in half until there's one job left so idle threads can steal the other halves
+	private class RunJobs extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+
+		public RunJobs( int start, int end ) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+
+			if( end - start == 1 ) {
+				String result = runJob( jobs.get( start ) );
+				synchronized( out ) {
+					out.println( result );
+					out.flush();
+				}
+				return;
+			}
+
+			int middle = ( start + end ) >>> 1;
+			invokeAll( new RunJobs( start, middle ), new RunJobs( middle, end ) );
+		}
+
+	}
+
+	//Runs a single program on a pooled engine and returns how it went as a line of JSON
+	//Nothing a program does can stop the others from running, anything unexpected is reported as its result
+	private String runJob( Job job ) {
+
+		StringBuilder json = new StringBuilder( "{\"program\":" );
+		ProgramRun.appendString( json, job.program.toString() );
+
+		try {
+
+			String[] lines = readLines( job.program );
+			int[] memoryImage = job.memoryImage == null ? null : readMemoryImage( job.memoryImage );
+			String expectedOutput = job.expectedOutput == null ? null : new String( Files.readAllBytes( job.expectedOutput ), Charset.forName( "UTF-8" ) );
+
+			ProgramRun run = ProgramRun.run( pool, programs.get( lines ), memoryImage, maxSteps, timeoutNanos );
+
+			Boolean isOutputExpected = expectedOutput == null ? null : normalize( run.output ).equals( normalize( expectedOutput ) );
+
+			if( run.status.equals( ProgramRun.FINISHED ) && !Boolean.FALSE.equals( isOutputExpected ) ) {
+				passed.incrementAndGet();
+			}else {
+				failed.incrementAndGet();
+			}
+
+			run.appendJson( json );
+			if( isOutputExpected != null ) {
+				json.append( ",\"outputExpected\":" ).append( isOutputExpected );
+			}
+
+		} catch ( NoSuchFileException e ) {
+			failed.incrementAndGet();
+			json.append( ",\"status\":\"unreadable\",\"message\":" );
+			ProgramRun.appendString( json, e.getFile() + " doesn't exist" );
+		} catch ( IOException e ) {
+			failed.incrementAndGet();
+			json.append( ",\"status\":\"unreadable\",\"message\":" );
+			ProgramRun.appendString( json, e.getMessage() );
+		} catch ( RuntimeException e ) {
+			failed.incrementAndGet();
+			json.append( ",\"status\":\"crashed\",\"message\":" );
+			ProgramRun.appendString( json, e.toString() );
+		}
+
+		return json.append( '}' ).toString();
+	}
+
+	//Reads a program, split the same way the code window does so line numbers match
+	private static String[] readLines( Path program ) throws IOException {
+		String code = new String( Files.readAllBytes( program ), Charset.forName( "UTF-8" ) );
+		return code.split( "\\r?\\n", -1 );
+	}
+
+	//Reads the numbers in a memory image
+	private int[] readMemoryImage( Path image ) throws IOException {
+
+		String text = new String( Files.readAllBytes( image ), Charset.forName( "UTF-8" ) ).trim();
+		if( text.isEmpty() ) {
+			return new int[ 0 ];
+		}
+
+		String[] words = text.split( "\\s+" );
+		if( words.length > configuration.mainMemoryLength ) {
+			throw new IOException( image + " has more than " + configuration.mainMemoryLength + " addresses" );
+		}
+
+		int[] values = new int[ words.length ];
+		for (int i = 0; i < words.length; i++) {
+			try {
+				values[ i ] = Integer.parseInt( words[ i ] );
+			} catch ( NumberFormatException e ) {
+				throw new IOException( image + " has " + words[ i ] + " for M" + i + ", which isn't a number" );
+			}
+			if( values[ i ] > configuration.maxNumberRange || values[ i ] < configuration.minNumberRange ) {
+				throw new IOException( image + " has " + words[ i ] + " for M" + i + ", which is outside the number range" );
+			}
+		}
+
+		return values;
+	}
+
+	//Returns printed text as it's compared, ignoring how lines end and any blank lines at the end
+	private static String normalize( String text ) {
+		text = text.replace( "\r\n", "\n" );
+		int end = text.length();
+		while( end > 0 && text.charAt( end - 1 ) == '\n' ) {
+			end--;
+		}
+		return text.substring( 0, end );
+	}
+
+	//A program to run, with what's put into memory first and what it should print, either of which may be null
+	public static class Job {
+
+		public final Path program;
+		public final Path memoryImage;
+		public final Path expectedOutput;
+
+		public Job( Path program, Path memoryImage, Path expectedOutput ) {
+			this.program = program;
+			this.memoryImage = memoryImage;
+			this.expectedOutput = expectedOutput;
+		}
+
+	}
+
+}
@@ -0,0 +1,698 @@
+package core;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static core.ClassFileWriter.*;
+
+//Compiles a program into a JVM class so the JIT can turn A1 code into native code
+//
+//The whole program, or just one loop of it, becomes one method
+//Registers live in local variables, main memory is used as an int[] and each line gets its own block of bytecode
+//Branches to known lines are plain jumps and anything that writes the program counter goes back through a tableswitch on it
+//
+//Steps are counted one basic block at a time, so a block that doesn't fit in what's left of the budget is handed back to the interpreter
+//Yield requests are only looked for at the top of loops and on writes to the program counter
+//Errors are reported with the same line and leave the machine in the same state as the interpreter would
+public class BytecodeCompiler {
+
+	//HotSpot won't JIT compile methods bigger than this, so bigger programs are left to the interpreter
+	private static final int MAX_METHOD_LENGTH = 8000;
+
+	//Classes used by generated code
+	private static final String MACHINE_CLASS = "core/Machine";
+	private static final String TRAP_CLASS = "core/Trap";
+	private static final String PROGRAM_CLASS = "core/Program";
+
+	//Local variable slots
+	private static final int MACHINE = 1;
+	private static final int BUDGET = 2;
+	private static final int INITIAL_BUDGET = 3;
+	private static final int PROGRAM_COUNTER = 4;
+	private static final int MEMORY = 5;
+	private static final int REGISTER_ARRAY = 6;
+	private static final int FIRST_REGISTER = 7;
+
+	//Gives every generated class its own name
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	//The instructions being compiled
+	private Instruction[] instructions;
+
+	//The shape of the machine the program was assembled for, whose bounds are written into the checks
+	private MachineConfiguration configuration;
+
+	//The pure subroutine starting on each line, if there is one
+	private Subroutine[] subroutines;
+
+	//Whether each line returns from a pure subroutine
+	private boolean[] isReturnLine;
+
+	//The lines that are compiled, anything outside of them leaves the compiled code
+	private int firstLine;
+	private int lastLine;
+
+	//What is being written
+	private ClassFileWriter writer;
+	private Code code;
+
+	//Lines that start a basic block, because something jumps to them
+	private boolean[] isLeader;
+
+	//Lines that something jumps backwards to
+	private boolean[] isLoopHead;
+
+	//How many steps are left in a line's block, counting the line itself
+	private int[] remainingInBlock;
+
+	//Labels for each line
+	//The entry checks and takes the block's steps from the budget, the code is the line itself
+	//Lines that aren't leaders only get an entry if the program counter can land on them
+	private int[] entryLabels;
+	private int[] codeLabels;
+
+	//Labels that leave the compiled code with the program counter set to a line
+	private int[] exitLabels;
+
+	//Whether a register is used at all, so only those are copied in and out
+	private boolean[] isRegisterUsed;
+
+	//Shared labels
+	private int dispatchLabel;
+	private int exitLabel;
+
+	//Error handling written after the main code so the common path stays short
+	private List<Runnable> outOfLineCode = new ArrayList<Runnable>();
+
+	private BytecodeCompiler( Program program, int firstLine, int lastLine ) {
+		this.instructions = program.instructions;
+		this.configuration = program.configuration;
+		this.isRegisterUsed = new boolean[ configuration.getRegisterSlots() ];
+		this.subroutines = program.subroutines;
+		this.isReturnLine = SubroutineAnalysis.findReturnLines( program );
+		this.firstLine = firstLine;
+		this.lastLine = lastLine;
+	}
+
+	//Compiles a program, or returns null if it can't be compiled
+	public static CompiledProgram compile( Program program ) {
+		return compile( program, 0, program.getLineCount() - 1 );
+	}
+
+	//Compiles the lines from firstLine to lastLine of a program, or returns null if they can't be compiled
+	//Running the result leaves the compiled code as soon as the program counter leaves those lines
+	public static CompiledProgram compile( Program program, int firstLine, int lastLine ) {
+
+		//Writes to the program counter aren't range checked in compiled code, which is only safe if every line fits in a register
+		if( program.getLineCount() == 0 || program.getLineCount() > program.configuration.maxNumberRange || program.configuration.minNumberRange > 0 ) {
+			return null;
+		}
+
+		return new BytecodeCompiler( program, firstLine, lastLine ).compile();
+	}
+
+	//Compiles the program
+	private CompiledProgram compile() {
+
+		String className = "A1Program" + classCount.incrementAndGet();
+		writer = new ClassFileWriter( className, "java/lang/Object", "core/CompiledProgram" );
+		writer.addDefaultConstructor();
+
+		findBlocks();
+
+		code = new Code( 4, FIRST_REGISTER + configuration.getRegisterSlots() );
+		writeMethod();
+
+		if( code.length() > MAX_METHOD_LENGTH ) {
+			return null;
+		}
+
+		writer.addMethod( ACC_PUBLIC, "run", "(L" + MACHINE_CLASS + ";I)I", code );
+
+		return load( className, writer.toByteArray() );
+	}
+
+	//Defines a generated class in its own class loader so it can be unloaded along with its program
+	private static CompiledProgram load( String className, byte[] bytes ) {
+		try {
+			return (CompiledProgram) new ProgramClassLoader().define( className, bytes ).getDeclaredConstructor().newInstance();
+		} catch ( ReflectiveOperationException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	//A class loader for a single generated class
+	private static class ProgramClassLoader extends ClassLoader {
+
+		public ProgramClassLoader() {
+			super( CompiledProgram.class.getClassLoader() );
+		}
+
+		public Class<?> define( String className, byte[] bytes ) {
+			return defineClass( className, bytes, 0, bytes.length );
+		}
+
+	}
+
+	/*
+	 * Analysis
+	 */
+
+	//Returns whether a line is compiled, everything else is left to the machine
+	//That includes the start of every pure subroutine, so the machine can look its calls up, and every return so it sees them end
+	private boolean isCompiled( int line ) {
+		return line >= firstLine && line <= lastLine && instructions[ line ].opcode != Opcode.INVALID && subroutines[ line ] == null && !isReturnLine[ line ];
+	}
+
+	//Returns whether an instruction never continues on to the next line
+	private static boolean endsBlock( Instruction instruction ) {
+		switch( instruction.opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+		case BR:
+			return true;
+		default:
+			return instruction.destination == Registers.PC;
+		}
+	}
+
+	//Finds where basic blocks start and how long they are, and which registers are used
+	private void findBlocks() {
+
+		isLeader = new boolean[ instructions.length ];
+		isLoopHead = new boolean[ instructions.length ];
+		remainingInBlock = new int[ instructions.length ];
+		entryLabels = new int[ instructions.length ];
+		codeLabels = new int[ instructions.length ];
+		exitLabels = new int[ instructions.length + 1 ];
+
+		//The program counter is always needed to know where to start
+		isRegisterUsed[ Registers.PC ] = true;
+
+		for (int line = firstLine; line <= lastLine; line++) {
+
+			if( !isCompiled( line ) ) {
+				continue;
+			}
+
+			Instruction instruction = instructions[ line ];
+
+			//Branch targets and the lines after conditional branches start blocks
+			switch( instruction.opcode ) {
+			case BNE:
+			case BEQ:
+			case BGT:
+			case BLT:
+				markLeader( instruction.next );
+				markLeader( instruction.target );
+				markLoopHead( instruction );
+				break;
+			case BR:
+				markLeader( instruction.target );
+				markLoopHead( instruction );
+				break;
+			case LOAD:
+			case STORE:
+				isRegisterUsed[ Registers.MH ] = true;
+				break;
+			default:
+				break;
+			}
+
+			markUsed( instruction.aRegister );
+			markUsed( instruction.bRegister );
+			markUsed( instruction.destination );
+
+		}
+
+		//Count the steps left in each block from the bottom up
+		for (int line = lastLine; line >= firstLine; line--) {
+
+			if( !isCompiled( line ) ) {
+				continue;
+			}
+
+			Instruction instruction = instructions[ line ];
+			if( !endsBlock( instruction ) && isCompiled( instruction.next ) && !isLeader[ instruction.next ] ) {
+				remainingInBlock[ line ] = 1 + remainingInBlock[ instruction.next ];
+			}else {
+				remainingInBlock[ line ] = 1;
+			}
+
+		}
+
+	}
+
+	//Marks a line as the start of a block
+	private void markLeader( int line ) {
+		if( isCompiled( line ) ) {
+			isLeader[ line ] = true;
+		}
+	}
+
+	//Marks a branch's target as the top of a loop if it jumps backwards
+	private void markLoopHead( Instruction branch ) {
+		if( branch.target <= branch.line && isCompiled( branch.target ) ) {
+			isLoopHead[ branch.target ] = true;
+		}
+	}
+
+	//Marks a register as used
+	private void markUsed( int register ) {
+		if( register != Instruction.LITERAL ) {
+			isRegisterUsed[ register ] = true;
+		}
+	}
+
+	//Returns the local variable a register is kept in
+	private static int localFor( int register ) {
+		if( register == Registers.PC ) {
+			return PROGRAM_COUNTER;
+		}
+		return FIRST_REGISTER + register;
+	}
+
+	/*
+	 * Code generation
+	 */
+
+	//Writes the run method
+	private void writeMethod() {
+
+		for (int line = firstLine; line <= lastLine; line++) {
+			entryLabels[ line ] = code.newLabel();
+			codeLabels[ line ] = code.newLabel();
+		}
+		dispatchLabel = code.newLabel();
+		exitLabel = code.newLabel();
+
+		//Copy the machine's state into locals
+		code.local( ILOAD, BUDGET );
+		code.local( ISTORE, INITIAL_BUDGET );
+
+		code.local( ALOAD, MACHINE );
+		code.op( GETFIELD );
+		code.u2( writer.fieldRef( MACHINE_CLASS, "registers", "[I" ) );
+		code.local( ASTORE, REGISTER_ARRAY );
+
+		copyRegisters( true );
+
+		code.local( ALOAD, MACHINE );
+		code.op( GETFIELD );
+		code.u2( writer.fieldRef( MACHINE_CLASS, "mainMemory", "[I" ) );
+		code.local( ASTORE, MEMORY );
+
+		//Jump to whatever line the program counter is on
+		//Writes to the program counter come back through here, so it's one of the places yield requests are looked for
+		code.placeLabel( dispatchLabel );
+		writeYieldCheck( exitLabel );
+		int[] dispatchTargets = new int[ lastLine - firstLine + 1 ];
+		for (int line = firstLine; line <= lastLine; line++) {
+			if( isCompiled( line ) ) {
+				dispatchTargets[ line - firstLine ] = entryLabels[ line ];
+			}else {
+				dispatchTargets[ line - firstLine ] = exitLabel;
+			}
+		}
+		code.local( ILOAD, PROGRAM_COUNTER );
+		code.tableSwitch( firstLine, lastLine, exitLabel, dispatchTargets );
+
+		//Every line in order, so most blocks fall straight through to the next line
+		for (int line = firstLine; line <= lastLine; line++) {
+
+			if( !isCompiled( line ) ) {
+				continue;
+			}
+
+			if( isLeader[ line ] ) {
+				writeEntry( line );
+			}else {
+				//Only the program counter can land in the middle of a block, so the entry goes out of the way
+				final int entryLine = line;
+				outOfLineCode.add( new Runnable() {
+
+					@Override
+					public void run() {
+						writeEntry( entryLine );
+						code.jump( GOTO, codeLabels[ entryLine ] );
+					}
+
+				});
+			}
+
+			code.placeLabel( codeLabels[ line ] );
+			writeInstruction( instructions[ line ], nextCompiledLine( line ) );
+		}
+
+		//Everything that doesn't happen often
+		for (int i = 0; i < outOfLineCode.size(); i++) {
+			outOfLineCode.get( i ).run();
+		}
+
+		for (int line = 0; line < exitLabels.length; line++) {
+			if( exitLabels[ line ] != 0 ) {
+				code.placeLabel( exitLabels[ line ] - 1 );
+				code.pushInt( line, writer );
+				code.local( ISTORE, PROGRAM_COUNTER );
+				code.jump( GOTO, exitLabel );
+			}
+		}
+
+		//Copy the state back into the machine and return how many steps were taken
+		code.placeLabel( exitLabel );
+		copyRegisters( false );
+		code.local( ILOAD, INITIAL_BUDGET );
+		code.local( ILOAD, BUDGET );
+		code.op( ISUB );
+		code.op( IRETURN );
+
+	}
+
+	//Copies every used register between the machine and the locals
+	private void copyRegisters( boolean intoLocals ) {
+
+		for (int register = 0; register < isRegisterUsed.length; register++) {
+
+			if( !isRegisterUsed[ register ] ) {
+				continue;
+			}
+
+			code.local( ALOAD, REGISTER_ARRAY );
+			code.pushInt( register, writer );
+
+			if( intoLocals ) {
+				code.op( IALOAD );
+				code.local( ISTORE, localFor( register ) );
+			}else {
+				code.local( ILOAD, localFor( register ) );
+				code.op( IASTORE );
+			}
+
+		}
+
+	}
+
+	//Returns the next line after a given one that has code written for it, or -1 if there isn't one
+	private int nextCompiledLine( int line ) {
+		for (int next = line + 1; next <= lastLine; next++) {
+			if( isCompiled( next ) ) {
+				return next;
+			}
+		}
+		return -1;
+	}
+
+	//Writes the start of a block, which takes its steps from the budget or leaves if there aren't enough
+	//The top of a loop also leaves if a yield has been requested
+	private void writeEntry( int line ) {
+		code.placeLabel( entryLabels[ line ] );
+		if( isLoopHead[ line ] ) {
+			writeYieldCheck( exitAt( line ) );
+		}
+		code.local( ILOAD, BUDGET );
+		code.pushInt( remainingInBlock[ line ], writer );
+		code.jump( IF_ICMPLT, exitAt( line ) );
+		code.increment( BUDGET, -remainingInBlock[ line ] );
+	}
+
+	//Jumps to a label if a yield has been requested
+	//The request is left for the engine to clear
+	private void writeYieldCheck( int label ) {
+		code.local( ALOAD, MACHINE );
+		code.op( GETFIELD );
+		code.u2( writer.fieldRef( MACHINE_CLASS, "isYieldRequested", "Z" ) );
+		code.jump( IFNE, label );
+	}
+
+	//Returns a label that leaves the compiled code with the program counter on a line
+	private int exitAt( int line ) {
+
+		//Lines past the end all mean the program is done
+		if( line > instructions.length ) {
+			line = instructions.length;
+		}
+
+		//Stored plus one so zero means no label yet
+		if( exitLabels[ line ] == 0 ) {
+			exitLabels[ line ] = code.newLabel() + 1;
+		}
+
+		return exitLabels[ line ] - 1;
+	}
+
+	//Returns the label to jump to for continuing on to a line
+	private int labelFor( int line ) {
+		if( !isCompiled( line ) ) {
+			return exitAt( line );
+		}
+		if( isLeader[ line ] ) {
+			return entryLabels[ line ];
+		}
+		return codeLabels[ line ];
+	}
+
+	//Continues on to a line, falling through if it is written next
+	private void continueTo( int line, int nextWritten ) {
+		if( line == nextWritten && isCompiled( line ) ) {
+			return;
+		}
+		code.jump( GOTO, labelFor( line ) );
+	}
+
+	//Writes a single instruction
+	private void writeInstruction( Instruction instruction, int nextWritten ) {
+
+		switch( instruction.opcode ) {
+		case MOV:
+
+			//Writing PC moves on to the next executable line after the one written
+			if( instruction.destination == Registers.PC ) {
+				code.local( ALOAD, MACHINE );
+				code.op( GETFIELD );
+				code.u2( writer.fieldRef( MACHINE_CLASS, "program", "L" + PROGRAM_CLASS + ";" ) );
+				pushArgument( instruction.aRegister, instruction.aValue );
+				code.op( INVOKEVIRTUAL );
+				code.u2( writer.methodRef( PROGRAM_CLASS, "getNextExecutableLine", "(I)I" ) );
+				code.local( ISTORE, PROGRAM_COUNTER );
+				code.jump( GOTO, dispatchLabel );
+				return;
+			}
+
+			//Registers and literals are always in range already
+			pushArgument( instruction.aRegister, instruction.aValue );
+			storeResult( instruction, false );
+			break;
+
+		case ADD:
+			writeArithmetic( instruction, IADD );
+			break;
+		case SUB:
+			writeArithmetic( instruction, ISUB );
+			break;
+		case ASL:
+			writeArithmetic( instruction, ISHL );
+			break;
+		case ASR:
+			writeArithmetic( instruction, ISHR );
+			break;
+
+		case BNE:
+			writeBranch( instruction, IF_ICMPNE, nextWritten );
+			return;
+		case BEQ:
+			writeBranch( instruction, IF_ICMPEQ, nextWritten );
+			return;
+		case BGT:
+			writeBranch( instruction, IF_ICMPGT, nextWritten );
+			return;
+		case BLT:
+			writeBranch( instruction, IF_ICMPLT, nextWritten );
+			return;
+		case BR:
+			code.jump( GOTO, labelFor( instruction.target ) );
+			return;
+
+		case LOAD:
+			//The memory head is checked every time it is written, so it is always a valid address here
+			code.local( ALOAD, MEMORY );
+			code.local( ILOAD, localFor( Registers.MH ) );
+			code.op( IALOAD );
+			storeResult( instruction, true );
+			break;
+
+		case STORE:
+			//Stored through the machine so the UI finds out about it
+			code.local( ALOAD, MACHINE );
+			code.local( ILOAD, localFor( Registers.MH ) );
+			pushArgument( instruction.aRegister, instruction.aValue );
+			code.op( INVOKEVIRTUAL );
+			code.u2( writer.methodRef( MACHINE_CLASS, "writeMainMemory", "(II)V" ) );
+			break;
+
+		case APND:
+			//The machine traps on lastLine
+			code.local( ALOAD, MACHINE );
+			code.pushInt( instruction.line, writer );
+			code.op( PUTFIELD );
+			code.u2( writer.fieldRef( MACHINE_CLASS, "lastLine", "I" ) );
+
+			code.local( ALOAD, MACHINE );
+			pushArgument( instruction.aRegister, instruction.aValue );
+			code.op( INVOKEVIRTUAL );
+			code.u2( writer.methodRef( MACHINE_CLASS, "writeToStringBuffer", "(I)V" ) );
+
+			//The machine has already trapped if anything went wrong, all that's left is to stop
+			code.local( ALOAD, MACHINE );
+			code.op( GETFIELD );
+			code.u2( writer.fieldRef( MACHINE_CLASS, "halt", "Z" ) );
+			code.jump( IFNE, stopAfter( instruction, null ) );
+			break;
+
+		case DUMP:
+		case PRNT:
+		case CLR:
+			code.local( ALOAD, MACHINE );
+			code.op( INVOKEVIRTUAL );
+			code.u2( writer.methodRef( MACHINE_CLASS, instruction.opcode.name(), "()V" ) );
+			break;
+
+		default:
+			throw new IllegalStateException( "Can't compile " + instruction.opcode );
+		}
+
+		//Writing PC has already gone back to the dispatch
+		if( instruction.destination != Registers.PC ) {
+			continueTo( instruction.next, nextWritten );
+		}
+
+	}
+
+	//Pushes the value of an argument
+	private void pushArgument( int register, int literal ) {
+		if( register == Instruction.LITERAL ) {
+			code.pushInt( literal, writer );
+		}else {
+			code.local( ILOAD, localFor( register ) );
+		}
+	}
+
+	//Writes an arithmetic instruction
+	private void writeArithmetic( Instruction instruction, int opcode ) {
+		pushArgument( instruction.aRegister, instruction.aValue );
+		pushArgument( instruction.bRegister, instruction.bValue );
+		code.op( opcode );
+		storeResult( instruction, true );
+	}
+
+	//Writes a conditional branch
+	private void writeBranch( Instruction instruction, int opcode, int nextWritten ) {
+		pushArgument( instruction.aRegister, instruction.aValue );
+		pushArgument( instruction.bRegister, instruction.bValue );
+		code.jump( opcode, labelFor( instruction.target ) );
+		continueTo( instruction.next, nextWritten );
+	}
+
+	//Stores the value on the stack into an instruction's destination, checking it the same way the machine does
+	private void storeResult( Instruction instruction, boolean checkRange ) {
+
+		int destination = instruction.destination;
+		int local = localFor( destination );
+
+		code.local( ISTORE, local );
+
+		//The value is stored even if it's out of range, just like the machine does
+		if( checkRange ) {
+			writeRangeCheck( local, stopAfter( instruction, Trap.NUMBER_OUT_OF_BOUNDS ) );
+		}
+
+		//Moving the memory head out of bounds is a trap straight away
+		//A verified literal that's a valid address can't do that, so it isn't checked
+		if( destination == Registers.MH && !isValidAddress( instruction ) ) {
+			writeMemoryHeadCheck( stopAfter( instruction, Trap.MEMORY_HEAD_OUT_OF_BOUNDS ) );
+		}
+
+		//Any other write to PC is an exact jump, as long as it doesn't land before the first line
+		if( destination == Registers.PC ) {
+			code.local( ILOAD, local );
+			code.jump( IFLT, stopAfter( instruction, Trap.INVALID_JUMP_TARGET ) );
+			code.jump( GOTO, dispatchLabel );
+		}
+
+	}
+
+	//Returns whether an instruction moves a literal that's a valid address
+	private boolean isValidAddress( Instruction instruction ) {
+		return instruction.opcode == Opcode.MOV && instruction.aRegister == Instruction.LITERAL
+				&& instruction.aValue >= 0 && instruction.aValue < configuration.mainMemoryLength;
+	}
+
+	//Jumps to a label if a local is out of the number range
+	private void writeRangeCheck( int local, int label ) {
+		code.local( ILOAD, local );
+		code.pushInt( configuration.maxNumberRange, writer );
+		code.jump( IF_ICMPGT, label );
+		code.local( ILOAD, local );
+		code.pushInt( configuration.minNumberRange, writer );
+		code.jump( IF_ICMPLT, label );
+	}
+
+	//Jumps to a label if the memory head is out of bounds
+	private void writeMemoryHeadCheck( int label ) {
+		code.local( ILOAD, localFor( Registers.MH ) );
+		code.jump( IFLT, label );
+		code.local( ILOAD, localFor( Registers.MH ) );
+		code.pushInt( configuration.mainMemoryLength, writer );
+		code.jump( IF_ICMPGE, label );
+	}
+
+	//Raises a trap through the machine on an instruction's line
+	private void writeTrap( Instruction instruction, Trap trap ) {
+		code.local( ALOAD, MACHINE );
+		code.op( GETSTATIC );
+		code.u2( writer.fieldRef( TRAP_CLASS, trap.name(), "L" + TRAP_CLASS + ";" ) );
+		code.pushInt( instruction.line, writer );
+		code.op( INVOKEVIRTUAL );
+		code.u2( writer.methodRef( MACHINE_CLASS, "trap", "(L" + TRAP_CLASS + ";I)V" ) );
+	}
+
+	//Returns a label that raises a trap and leaves the compiled code once an instruction has finished
+	//The trap is null if the machine has already raised it
+	//Only the first trap is reported, so nothing else the interpreter would check after it matters
+	private int stopAfter( final Instruction instruction, final Trap trap ) {
+
+		final int label = code.newLabel();
+
+		outOfLineCode.add( new Runnable() {
+
+			@Override
+			public void run() {
+
+				code.placeLabel( label );
+
+				if( trap != null ) {
+					writeTrap( instruction, trap );
+				}
+
+				//The rest of the block never ran, so give its steps back
+				int unused = remainingInBlock[ instruction.line ] - 1;
+				if( unused > 0 ) {
+					code.increment( BUDGET, unused );
+				}
+
+				//A jump that trapped has already set the program counter
+				if( instruction.destination == Registers.PC ) {
+					code.jump( GOTO, exitLabel );
+				}else {
+					code.jump( GOTO, exitAt( instruction.next ) );
+				}
+
+			}
+
+		});
+
+		return label;
+	}
+
+}
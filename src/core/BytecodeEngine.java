@@ -0,0 +1,56 @@
+package core;
+
+//Runs programs compiled to JVM bytecode by BytecodeCompiler
+//Anything the compiled code can't handle is stepped through with the interpreter
+public class BytecodeEngine implements ExecutionEngine {
+
+	//The program that was compiled last and its compiled code
+	//The code is null if the program couldn't be compiled
+	private Program compiledProgram;
+	private CompiledProgram code;
+
+	//Used for programs that can't be compiled
+	private InterpreterEngine interpreter = new InterpreterEngine();
+
+	@Override
+	public long run( Machine machine, long maxSteps ) {
+
+		//Compile each program the first time it is run
+		if( machine.program != compiledProgram ) {
+			compiledProgram = machine.program;
+			code = BytecodeCompiler.compile( machine.program );
+		}
+
+		if( code == null ) {
+			return interpreter.run( machine, maxSteps );
+		}
+
+		long steps = 0;
+
+		while( steps < maxSteps && machine.hasNextLine() ) {
+
+			int budget = (int) Math.min( maxSteps - steps, Integer.MAX_VALUE );
+			steps += code.run( machine, budget );
+
+			//The compiled code leaves yield requests for us to clear
+			if( machine.takeYieldRequest() ) {
+				break;
+			}
+
+			//The compiled code hands back lines that aren't code, calls to pure subroutines and their returns, and blocks longer than what's left of the budget
+			//The machine takes one step past them and the compiled code picks up from there
+			if( steps < maxSteps && machine.hasNextLine() ) {
+				steps += machine.step( maxSteps - steps );
+
+				//A call that was stopped part way, or one being run through us returning
+				if( machine.takeYieldRequest() ) {
+					break;
+				}
+			}
+
+		}
+
+		return steps;
+	}
+
+}
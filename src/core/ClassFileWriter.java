@@ -0,0 +1,501 @@
+package core;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Writes just enough of the JVM class file format to hold generated code
+//Classes are written as version 49 (Java 5) so methods don't need stack map frames
+public class ClassFileWriter {
+
+	//Opcodes used by generated code
+	public static final int ICONST_0 = 3;
+	public static final int BIPUSH = 16;
+	public static final int SIPUSH = 17;
+	public static final int LDC = 18;
+	public static final int LDC_W = 19;
+	public static final int ILOAD = 21;
+	public static final int ALOAD = 25;
+	public static final int IALOAD = 46;
+	public static final int ISTORE = 54;
+	public static final int ASTORE = 58;
+	public static final int IASTORE = 79;
+	public static final int POP = 87;
+	public static final int DUP = 89;
+	public static final int IADD = 96;
+	public static final int ISUB = 100;
+	public static final int ISHL = 120;
+	public static final int ISHR = 122;
+	public static final int IINC = 132;
+	public static final int IFEQ = 153;
+	public static final int IFNE = 154;
+	public static final int IFLT = 155;
+	public static final int IFGE = 156;
+	public static final int IFGT = 157;
+	public static final int IFLE = 158;
+	public static final int IF_ICMPEQ = 159;
+	public static final int IF_ICMPNE = 160;
+	public static final int IF_ICMPLT = 161;
+	public static final int IF_ICMPGE = 162;
+	public static final int IF_ICMPGT = 163;
+	public static final int IF_ICMPLE = 164;
+	public static final int GOTO = 167;
+	public static final int TABLESWITCH = 170;
+	public static final int IRETURN = 172;
+	public static final int RETURN = 177;
+	public static final int GETSTATIC = 178;
+	public static final int GETFIELD = 180;
+	public static final int PUTFIELD = 181;
+	public static final int INVOKEVIRTUAL = 182;
+	public static final int INVOKESPECIAL = 183;
+	public static final int WIDE = 196;
+
+	//Access flags
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	//Constant pool tags
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	//The constant pool, written as it is built
+	private ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+	private DataOutputStream constantPoolOut = new DataOutputStream( constantPool );
+
+	//Constants already in the pool and their indexes, so each is only written once
+	private Map<String, Integer> constants = new HashMap<String, Integer>();
+
+	//The next free constant pool index, the pool starts at 1
+	private int constantCount = 1;
+
+	//Methods written so far
+	private List<byte[]> methods = new ArrayList<byte[]>();
+
+	//The class being written and what it extends and implements
+	private String className;
+	private String superName;
+	private String[] interfaceNames;
+
+	public ClassFileWriter( String className, String superName, String... interfaceNames ) {
+		this.className = className;
+		this.superName = superName;
+		this.interfaceNames = interfaceNames;
+	}
+
+	/*
+	 * Constant pool
+	 */
+
+	//Adds a UTF8 constant and returns its index
+	public int utf8( String value ) {
+		String key = "U" + value;
+		Integer index = constants.get( key );
+		if( index != null ) {
+			return index;
+		}
+
+		try {
+			constantPoolOut.writeByte( CONSTANT_UTF8 );
+			constantPoolOut.writeUTF( value );
+		} catch ( IOException e ) {
+			//Writing to memory can't fail
+			throw new IllegalStateException( e );
+		}
+
+		return addConstant( key, 1 );
+	}
+
+	//Adds an int constant and returns its index
+	public int integer( int value ) {
+		String key = "I" + value;
+		Integer index = constants.get( key );
+		if( index != null ) {
+			return index;
+		}
+
+		writeConstant( CONSTANT_INTEGER, value >>> 16, value & 0xFFFF );
+
+		return addConstant( key, 1 );
+	}
+
+	//Adds a class constant and returns its index
+	public int classRef( String internalName ) {
+		String key = "C" + internalName;
+		Integer index = constants.get( key );
+		if( index != null ) {
+			return index;
+		}
+
+		int name = utf8( internalName );
+		writeConstant( CONSTANT_CLASS, name );
+
+		return addConstant( key, 1 );
+	}
+
+	//Adds a string constant and returns its index
+	public int string( String value ) {
+		String key = "S" + value;
+		Integer index = constants.get( key );
+		if( index != null ) {
+			return index;
+		}
+
+		int utf8 = utf8( value );
+		writeConstant( CONSTANT_STRING, utf8 );
+
+		return addConstant( key, 1 );
+	}
+
+	//Adds a field reference and returns its index
+	public int fieldRef( String owner, String name, String descriptor ) {
+		return memberRef( CONSTANT_FIELDREF, owner, name, descriptor );
+	}
+
+	//Adds a method reference and returns its index
+	public int methodRef( String owner, String name, String descriptor ) {
+		return memberRef( CONSTANT_METHODREF, owner, name, descriptor );
+	}
+
+	//Adds a field or method reference and returns its index
+	private int memberRef( int tag, String owner, String name, String descriptor ) {
+		String key = "M" + tag + owner + "." + name + descriptor;
+		Integer index = constants.get( key );
+		if( index != null ) {
+			return index;
+		}
+
+		int ownerIndex = classRef( owner );
+		int nameIndex = utf8( name );
+		int descriptorIndex = utf8( descriptor );
+
+		writeConstant( CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex );
+		int nameAndType = addConstant( "N" + name + descriptor + constantCount, 1 );
+
+		writeConstant( tag, ownerIndex, nameAndType );
+
+		return addConstant( key, 1 );
+	}
+
+	//Writes a constant made of a tag and 16 bit values
+	private void writeConstant( int tag, int... values ) {
+		try {
+			constantPoolOut.writeByte( tag );
+			for( int value : values ) {
+				constantPoolOut.writeShort( value );
+			}
+		} catch ( IOException e ) {
+			//Writing to memory can't fail
+			throw new IllegalStateException( e );
+		}
+	}
+
+	//Records a constant that was just written and returns its index
+	private int addConstant( String key, int size ) {
+		int index = constantCount;
+		constants.put( key, index );
+		constantCount += size;
+		return index;
+	}
+
+	/*
+	 * Methods
+	 */
+
+	//Adds a method with the given code
+	public void addMethod( int access, String name, String descriptor, Code code ) {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( bytes );
+
+		int nameIndex = utf8( name );
+		int descriptorIndex = utf8( descriptor );
+		int codeAttribute = utf8( "Code" );
+
+		byte[] instructions = code.toByteArray();
+
+		try {
+			out.writeShort( access );
+			out.writeShort( nameIndex );
+			out.writeShort( descriptorIndex );
+
+			//One attribute, the code
+			out.writeShort( 1 );
+			out.writeShort( codeAttribute );
+			out.writeInt( 12 + instructions.length );
+			out.writeShort( code.maxStack );
+			out.writeShort( code.maxLocals );
+			out.writeInt( instructions.length );
+			out.write( instructions );
+
+			//No exception table and no attributes
+			out.writeShort( 0 );
+			out.writeShort( 0 );
+		} catch ( IOException e ) {
+			//Writing to memory can't fail
+			throw new IllegalStateException( e );
+		}
+
+		methods.add( bytes.toByteArray() );
+	}
+
+	//Adds a public constructor that only calls the superclass's
+	public void addDefaultConstructor() {
+		Code code = new Code( 1, 1 );
+		code.op( ALOAD );
+		code.u1( 0 );
+		code.op( INVOKESPECIAL );
+		code.u2( methodRef( superName, "<init>", "()V" ) );
+		code.op( RETURN );
+		addMethod( ACC_PUBLIC, "<init>", "()V", code );
+	}
+
+	//Returns the finished class file
+	public byte[] toByteArray() {
+
+		//Resolve these before the pool is written out
+		int thisIndex = classRef( className );
+		int superIndex = classRef( superName );
+		int[] interfaceIndexes = new int[ interfaceNames.length ];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaceIndexes[ i ] = classRef( interfaceNames[ i ] );
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( bytes );
+
+		try {
+			out.writeInt( 0xCAFEBABE );
+			out.writeShort( 0 );
+			out.writeShort( 49 );
+
+			out.writeShort( constantCount );
+			constantPool.writeTo( out );
+
+			out.writeShort( ACC_PUBLIC | ACC_FINAL | ACC_SUPER );
+			out.writeShort( thisIndex );
+			out.writeShort( superIndex );
+
+			out.writeShort( interfaceIndexes.length );
+			for( int index : interfaceIndexes ) {
+				out.writeShort( index );
+			}
+
+			//No fields
+			out.writeShort( 0 );
+
+			out.writeShort( methods.size() );
+			for( byte[] method : methods ) {
+				out.write( method );
+			}
+
+			//No attributes
+			out.writeShort( 0 );
+		} catch ( IOException e ) {
+			//Writing to memory can't fail
+			throw new IllegalStateException( e );
+		}
+
+		return bytes.toByteArray();
+	}
+
+	//The bytecode of a single method
+	//Jumps are written against labels and patched once the labels are placed
+	public static class Code {
+
+		//Used in place of an offset for labels that haven't been placed yet
+		private static final int UNPLACED = -1;
+
+		//The bytecode so far
+		private byte[] bytes = new byte[ 1024 ];
+		private int length = 0;
+
+		//Where each label was placed
+		private int[] labelOffsets = new int[ 64 ];
+		private int labelCount = 0;
+
+		//Jumps waiting for their labels to be placed
+		//Each is the label, the offset the jump is relative to, where to write it and whether it's 4 bytes wide
+		private List<int[]> fixups = new ArrayList<int[]>();
+
+		//Limits written into the class file
+		public int maxStack;
+		public int maxLocals;
+
+		public Code( int maxStack, int maxLocals ) {
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		//Returns the number of bytes written so far
+		public int length() {
+			return length;
+		}
+
+		//Writes an opcode
+		public void op( int opcode ) {
+			u1( opcode );
+		}
+
+		//Writes a single byte
+		public void u1( int value ) {
+			if( length == bytes.length ) {
+				byte[] grown = new byte[ bytes.length * 2 ];
+				System.arraycopy( bytes, 0, grown, 0, length );
+				bytes = grown;
+			}
+			bytes[ length ] = (byte) value;
+			length++;
+		}
+
+		//Writes two bytes
+		public void u2( int value ) {
+			u1( value >> 8 );
+			u1( value );
+		}
+
+		//Writes four bytes
+		public void u4( int value ) {
+			u2( value >> 16 );
+			u2( value );
+		}
+
+		//Creates a label that can be jumped to once it is placed
+		public int newLabel() {
+			if( labelCount == labelOffsets.length ) {
+				int[] grown = new int[ labelOffsets.length * 2 ];
+				System.arraycopy( labelOffsets, 0, grown, 0, labelCount );
+				labelOffsets = grown;
+			}
+			labelOffsets[ labelCount ] = UNPLACED;
+			labelCount++;
+			return labelCount - 1;
+		}
+
+		//Places a label at the current position
+		public void placeLabel( int label ) {
+			labelOffsets[ label ] = length;
+		}
+
+		//Writes a jump or conditional branch to a label
+		public void jump( int opcode, int label ) {
+			int opcodeOffset = length;
+			op( opcode );
+			fixups.add( new int[] { label, opcodeOffset, length, 0 } );
+			u2( 0 );
+		}
+
+		//Writes a tableswitch over low..high, one label per value
+		public void tableSwitch( int low, int high, int defaultLabel, int[] labels ) {
+			int opcodeOffset = length;
+			op( TABLESWITCH );
+
+			//The operands are aligned to four bytes
+			while( length % 4 != 0 ) {
+				u1( 0 );
+			}
+
+			fixups.add( new int[] { defaultLabel, opcodeOffset, length, 1 } );
+			u4( 0 );
+			u4( low );
+			u4( high );
+			for( int label : labels ) {
+				fixups.add( new int[] { label, opcodeOffset, length, 1 } );
+				u4( 0 );
+			}
+		}
+
+		//Pushes an int constant using the shortest instruction for it
+		public void pushInt( int value, ClassFileWriter writer ) {
+			if( value >= -1 && value <= 5 ) {
+				op( ICONST_0 + value );
+			}else if( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+				op( BIPUSH );
+				u1( value );
+			}else if( value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ) {
+				op( SIPUSH );
+				u2( value );
+			}else {
+				loadConstant( writer.integer( value ) );
+			}
+		}
+
+		//Pushes a constant from the pool
+		public void loadConstant( int index ) {
+			if( index < 256 ) {
+				op( LDC );
+				u1( index );
+			}else {
+				op( LDC_W );
+				u2( index );
+			}
+		}
+
+		//Writes a load or store of a local variable
+		public void local( int opcode, int index ) {
+			if( index < 256 ) {
+				op( opcode );
+				u1( index );
+			}else {
+				op( WIDE );
+				op( opcode );
+				u2( index );
+			}
+		}
+
+		//Adds a constant to an int local variable
+		public void increment( int index, int amount ) {
+			if( index < 256 && amount >= Byte.MIN_VALUE && amount <= Byte.MAX_VALUE ) {
+				op( IINC );
+				u1( index );
+				u1( amount );
+			}else {
+				op( WIDE );
+				op( IINC );
+				u2( index );
+				u2( amount );
+			}
+		}
+
+		//Returns the finished bytecode with every jump patched
+		public byte[] toByteArray() {
+
+			for( int[] fixup : fixups ) {
+				int target = labelOffsets[ fixup[ 0 ] ];
+				if( target == UNPLACED ) {
+					throw new IllegalStateException( "Jump to a label that was never placed" );
+				}
+
+				int offset = target - fixup[ 1 ];
+				int position = fixup[ 2 ];
+
+				if( fixup[ 3 ] == 1 ) {
+					bytes[ position ] = (byte) ( offset >> 24 );
+					bytes[ position + 1 ] = (byte) ( offset >> 16 );
+					bytes[ position + 2 ] = (byte) ( offset >> 8 );
+					bytes[ position + 3 ] = (byte) offset;
+				}else {
+					if( offset < Short.MIN_VALUE || offset > Short.MAX_VALUE ) {
+						throw new IllegalStateException( "Jump is too far" );
+					}
+					bytes[ position ] = (byte) ( offset >> 8 );
+					bytes[ position + 1 ] = (byte) offset;
+				}
+			}
+
+			byte[] finished = new byte[ length ];
+			System.arraycopy( bytes, 0, finished, 0, length );
+			return finished;
+		}
+
+	}
+
+}
@@ -0,0 +1,523 @@
+package core;
+
+//Runs a program as an array of operations, each bound to its operands when the program is first run
+//Every operation does its instruction's work and returns the line to run next, so the dispatch loop does nothing else
+//Nothing has to be generated, so unlike the bytecode engine it runs at full speed straight away
+//Superinstructions are run as one operation whenever there's room in the budget for both of their steps
+//
+//The budget and yield requests are only checked where loops close, on backward jumps and writes to PC
+//Running forward can't take more steps than there are lines left, so if those all fit in the budget nothing needs checking until the next loop
+public class ClosureEngine implements ExecutionEngine {
+
+	//The program that was bound last and its operations, one per line
+	private Program boundProgram;
+	private Operation[] operations;
+
+	@Override
+	public long run( Machine machine, long maxSteps ) {
+
+		//Bind each program the first time it is run
+		if( machine.program != boundProgram ) {
+			boundProgram = machine.program;
+			operations = bind( machine.program );
+		}
+
+		Operation[] operations = this.operations;
+		int[] registers = machine.registers;
+		int lineCount = operations.length;
+
+		//The program counter is kept here while running and written back at the end
+		int pc = registers[ Registers.PC ];
+		long steps = 0;
+
+		//Whether the budget and yield requests need checking before the next step
+		//That's after a loop closes, and after every step once the budget could run out before the next loop does
+		boolean isCheckDue = true;
+
+		while( !machine.halt && pc < lineCount ) {
+
+			if( isCheckDue ) {
+
+				if( steps >= maxSteps || machine.takeYieldRequest() ) {
+					break;
+				}
+
+				isCheckDue = maxSteps - steps < lineCount - pc;
+			}
+
+			Operation operation = operations[ pc ];
+
+			//The machine is given what's left of the budget, and the check after makes sure a call it stopped part way is seen
+			if( operation.isHandedBack ) {
+				registers[ Registers.PC ] = pc;
+				steps += machine.step( maxSteps - steps );
+				pc = registers[ Registers.PC ];
+				isCheckDue = true;
+				continue;
+			}
+
+			if( operation.fused != null && ( !isCheckDue || maxSteps - steps > 1 ) ) {
+				pc = operation.fused.execute( machine, registers );
+				steps += 2;
+
+				//If the first instruction trapped the second never ran
+				if( machine.halt && machine.trapLine == operation.line ) {
+					steps--;
+				}
+
+				operation = operation.fused;
+			}else {
+				pc = operation.execute( machine, registers );
+				steps++;
+			}
+
+			isCheckDue = isCheckDue || operation.isLoopEnd;
+
+		}
+
+		registers[ Registers.PC ] = pc;
+
+		return steps;
+	}
+
+	//Binds every line of a program to an operation
+	static Operation[] bind( Program program ) {
+
+		Operation[] operations = new Operation[ program.getLineCount() ];
+
+		for (int line = 0; line < operations.length; line++) {
+			operations[ line ] = bind( program, program.instructions[ line ] );
+			operations[ line ].isLoopEnd = isLoopEnd( program.instructions[ line ] );
+			operations[ line ].isSafeMemoryHeadWrite = program.isSafeMemoryHeadWrite[ line ];
+		}
+
+		//Calls to pure subroutines are made through the machine, which can return anywhere
+		//Their returns go through it too, so it sees the end of a call it's running through us
+		boolean[] isReturnLine = SubroutineAnalysis.findReturnLines( program );
+		for (int line = 0; line < operations.length; line++) {
+			if( program.subroutines[ line ] != null || isReturnLine[ line ] ) {
+				operations[ line ].isHandedBack = true;
+				operations[ line ].isLoopEnd = true;
+			}
+		}
+
+		//The second instruction of a pair keeps its own operation for when it is jumped to directly
+		//Neither can be handed back to the machine, or running the pair would skip it
+		for (int line = 0; line < operations.length; line++) {
+
+			Superinstruction superinstruction = program.superinstructions[ line ];
+
+			if( superinstruction != null && !operations[ line ].isHandedBack && !operations[ superinstruction.second.line ].isHandedBack ) {
+				operations[ line ].fused = bindFused( superinstruction, operations[ superinstruction.second.line ] );
+
+				//The first instruction never writes PC, so the pair closes a loop if the second does
+				operations[ line ].fused.isLoopEnd = operations[ superinstruction.second.line ].isLoopEnd;
+				operations[ line ].fused.isSafeMemoryHeadWrite = operations[ line ].isSafeMemoryHeadWrite;
+			}
+
+		}
+
+		return operations;
+	}
+
+	//Binds a superinstruction to a single operation
+	//If the first instruction fails, the operation stops there just like the interpreter would
+	private static Operation bindFused( final Superinstruction superinstruction, final Operation second ) {
+
+		switch( superinstruction.kind ) {
+		case ARITHMETIC_BRANCH:
+			final boolean isSubtraction = superinstruction.first.opcode == Opcode.SUB;
+			return new Operation( superinstruction.first ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+
+					int value = isSubtraction ? a( registers ) - b( registers ) : a( registers ) + b( registers );
+
+					//Let the usual store report the error
+					if( value > machine.configuration.maxNumberRange || value < machine.configuration.minNumberRange ) {
+						return store( machine, registers, value );
+					}
+
+					registers[ destination ] = value;
+
+					return isTaken( second.opcode, second.a( registers ), second.b( registers ) ) ? second.target : second.next;
+				}
+
+			};
+
+		case MEMORY_ACCESS:
+			final boolean isLoad = superinstruction.second.opcode == Opcode.LOAD;
+			return new Operation( superinstruction.first ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+
+					int address = a( registers );
+
+					//Let the usual store report the error
+					if( !isSafeMemoryHeadWrite && ( address < 0 || address >= machine.mainMemory.length ) ) {
+						return store( machine, registers, address );
+					}
+
+					registers[ Registers.MH ] = address;
+
+					if( isLoad ) {
+						return second.store( machine, registers, machine.mainMemory[ address ] );
+					}
+
+					machine.writeMainMemory( address, second.a( registers ) );
+					return second.next;
+				}
+
+			};
+
+		default:
+			return new Operation( superinstruction.first ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+
+					machine.lastLine = line;
+					machine.writeToStringBuffer( a( registers ) );
+
+					if( machine.halt ) {
+						return next;
+					}
+
+					return isTaken( second.opcode, second.a( registers ), second.b( registers ) ) ? second.target : second.next;
+				}
+
+			};
+		}
+
+	}
+
+	//Returns whether an instruction can jump backwards, which is the only way a loop closes
+	//Anything that writes PC might, and so does a branch to its own line or one before it
+	static boolean isLoopEnd( Instruction instruction ) {
+		switch( instruction.opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+		case BR:
+			return instruction.target <= instruction.line;
+		case MOV:
+		case ADD:
+		case SUB:
+		case ASL:
+		case ASR:
+		case LOAD:
+			return instruction.destination == Registers.PC;
+		default:
+			return false;
+		}
+	}
+
+	//Returns whether a branch is taken
+	private static boolean isTaken( Opcode opcode, int a, int b ) {
+		switch( opcode ) {
+		case BNE:
+			return a != b;
+		case BEQ:
+			return a == b;
+		case BGT:
+			return a > b;
+		case BLT:
+			return a < b;
+		default:
+			//BR is always taken
+			return true;
+		}
+	}
+
+	//Binds a single instruction to an operation
+	private static Operation bind( final Program program, final Instruction instruction ) {
+
+		switch( instruction.opcode ) {
+		case MOV:
+
+			//Writing PC moves on to the next executable line after the one written
+			if( instruction.destination == Registers.PC ) {
+				return new Operation( instruction ) {
+
+					@Override
+					public int execute( Machine machine, int[] registers ) {
+						return program.getNextExecutableLine( a( registers ) );
+					}
+
+				};
+			}
+
+			//Registers and verified literals are always in range, so only a move into the memory head that might leave main memory needs checking
+			if( instruction.destination != Registers.MH || program.isSafeMemoryHeadWrite[ instruction.line ] ) {
+				return new Operation( instruction ) {
+
+					@Override
+					public int execute( Machine machine, int[] registers ) {
+						registers[ destination ] = a( registers );
+						return next;
+					}
+
+				};
+			}
+
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return store( machine, registers, a( registers ) );
+				}
+
+			};
+
+		case ADD:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return store( machine, registers, a( registers ) + b( registers ) );
+				}
+
+			};
+		case SUB:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return store( machine, registers, a( registers ) - b( registers ) );
+				}
+
+			};
+		case ASL:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return store( machine, registers, a( registers ) << b( registers ) );
+				}
+
+			};
+		case ASR:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return store( machine, registers, a( registers ) >> b( registers ) );
+				}
+
+			};
+
+		case BNE:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return a( registers ) != b( registers ) ? target : next;
+				}
+
+			};
+		case BEQ:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return a( registers ) == b( registers ) ? target : next;
+				}
+
+			};
+		case BGT:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return a( registers ) > b( registers ) ? target : next;
+				}
+
+			};
+		case BLT:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return a( registers ) < b( registers ) ? target : next;
+				}
+
+			};
+		case BR:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					return target;
+				}
+
+			};
+
+		case LOAD:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					//The memory head is checked every time it is written, so it is always a valid address here
+					return store( machine, registers, machine.mainMemory[ registers[ Registers.MH ] ] );
+				}
+
+			};
+		case STORE:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					//Stored through the machine so the UI finds out about it
+					machine.writeMainMemory( registers[ Registers.MH ], a( registers ) );
+					return next;
+				}
+
+			};
+
+		case APND:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					//The machine traps on lastLine
+					machine.lastLine = line;
+					machine.writeToStringBuffer( a( registers ) );
+					return next;
+				}
+
+			};
+		case DUMP:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					machine.DUMP();
+					return next;
+				}
+
+			};
+		case PRNT:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					machine.PRNT();
+					return next;
+				}
+
+			};
+		case CLR:
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					machine.CLR();
+					return next;
+				}
+
+			};
+
+		default:
+			//Anything that isn't code reports the error it was decoded with
+			return new Operation( instruction ) {
+
+				@Override
+				public int execute( Machine machine, int[] registers ) {
+					machine.trap( Trap.INVALID_INSTRUCTION, line, error );
+					return next;
+				}
+
+			};
+		}
+
+	}
+
+	//An instruction bound to its operands
+	static abstract class Operation {
+
+		//Copied out of the instruction so running never has to look at it
+		protected final Opcode opcode;
+		protected final int line;
+		protected final int next;
+		protected final int aRegister;
+		protected final int aValue;
+		protected final int bRegister;
+		protected final int bValue;
+		protected final int destination;
+		protected final int target;
+		protected final String error;
+
+		//This operation fused with the one after it, if its line starts a superinstruction
+		protected Operation fused;
+
+		//Whether this can jump backwards, which is where the budget and yield requests are checked
+		protected boolean isLoopEnd;
+
+		//Whether this writes MH with a value that's always a valid address
+		protected boolean isSafeMemoryHeadWrite;
+
+		//Whether this line is run through the machine instead, which is how calls to pure subroutines and their returns are made
+		protected boolean isHandedBack;
+
+		public Operation( Instruction instruction ) {
+			this.opcode = instruction.opcode;
+			this.line = instruction.line;
+			this.next = instruction.next;
+			this.aRegister = instruction.aRegister;
+			this.aValue = instruction.aValue;
+			this.bRegister = instruction.bRegister;
+			this.bValue = instruction.bValue;
+			this.destination = instruction.destination;
+			this.target = instruction.target;
+			this.error = instruction.error;
+		}
+
+		//Does the instruction's work and returns the line to run next
+		public abstract int execute( Machine machine, int[] registers );
+
+		//Returns the value of the first argument
+		protected final int a( int[] registers ) {
+			return aRegister != Instruction.LITERAL ? registers[ aRegister ] : aValue;
+		}
+
+		//Returns the value of the second argument
+		protected final int b( int[] registers ) {
+			return bRegister != Instruction.LITERAL ? registers[ bRegister ] : bValue;
+		}
+
+		//Stores a result into the destination register, checking it the same way the machine does
+		//Returns the line to run next, which is the value itself when writing PC
+		protected final int store( Machine machine, int[] registers, int value ) {
+
+			//The value is stored even if it's out of range, just like the machine does
+			registers[ destination ] = value;
+
+			//Only the first trap is reported, so the checks after this one can't report another
+			if( value > machine.configuration.maxNumberRange || value < machine.configuration.minNumberRange ) {
+				machine.trap( Trap.NUMBER_OUT_OF_BOUNDS, line );
+			}
+
+			if( destination == Registers.PC ) {
+
+				//Nothing comes before the first line
+				if( value < 0 ) {
+					machine.trap( Trap.INVALID_JUMP_TARGET, line );
+				}
+
+				return value;
+			}
+
+			//Moving the memory head out of bounds is a trap straight away
+			if( destination == Registers.MH && !isSafeMemoryHeadWrite && ( value < 0 || value >= machine.mainMemory.length ) ) {
+				machine.trap( Trap.MEMORY_HEAD_OUT_OF_BOUNDS, line );
+			}
+
+			return next;
+		}
+
+	}
+
+}
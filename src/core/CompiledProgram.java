@@ -0,0 +1,11 @@
+package core;
+
+//A program compiled to JVM bytecode by BytecodeCompiler
+public interface CompiledProgram {
+
+	//Runs the machine's program from its program counter for at most budget steps
+	//Returns early, with the machine's state up to date, at anything the compiled code can't handle itself
+	//Returns the number of steps taken
+	int run( Machine machine, int budget );
+
+}
@@ -0,0 +1,286 @@
+package core;
+import java.util.ArrayList;
+import java.util.List;
+
+//A program and the machine that runs it, with nothing to do with any window, so any number can be embedded in something else
+//Printed text and errors go to whoever is listening, and if nobody is they aren't even worked out
+//
+//Only one thread should use an engine at a time, except for requestStop which is safe from anywhere
+public class Engine {
+
+	//What the program was assembled with and the machine set up with
+	private final MachineConfiguration configuration;
+
+	//The program being run
+	private Program program;
+
+	//The machine running it
+	private final Machine machine;
+
+	//Everything listening for printed text and errors
+	private final List<MachineOutput> listeners = new ArrayList<MachineOutput>();
+
+	//Steps taken since the last reset
+	private long steps = 0;
+
+	//Assembles code and gets a machine ready to run it
+	public Engine( String[] lines, MachineConfiguration configuration ) {
+		this( new Assembler( configuration ).assemble( lines ), configuration );
+	}
+
+	//Gets a machine ready to run a program that's already been assembled
+	//Nothing is listening yet, so anything wrong with the program is only found through getErrors
+	//Throws an IllegalArgumentException if the program was assembled for a machine of another shape
+	public Engine( Program program, MachineConfiguration configuration ) {
+		this( program, configuration, null );
+	}
+
+	//Gets a machine ready to run a program that's already been assembled, with a listener already hearing about anything wrong with it
+	//The listener may be null for none
+	//Throws an IllegalArgumentException if the program was assembled for a machine of another shape
+	public Engine( Program program, MachineConfiguration configuration, MachineOutput listener ) {
+		this.configuration = configuration;
+		this.program = program;
+
+		machine = new Machine( null, configuration );
+		if( listener != null ) {
+			addListener( listener );
+		}
+		machine.reset( program );
+	}
+
+	//Switches to running some other code from the beginning, reporting anything wrong with it to the listeners
+	public void load( String[] lines ) {
+		load( new Assembler( configuration ).assemble( lines ) );
+	}
+
+	//Switches to running another program from the beginning, reporting anything wrong with it to the listeners
+	//Throws an IllegalArgumentException if the program was assembled for a machine of another shape
+	public void load( Program program ) {
+
+		//Checked by the machine before anything changes, so a program that can't run here leaves the last one loaded
+		machine.reset( program );
+		this.program = program;
+		steps = 0;
+	}
+
+	//Starts the program again from the beginning, reporting anything wrong with it to the listeners again
+	//Main memory is cleared, but only the parts of it the last run wrote, so starting again costs about as much as the last run touched
+	public void reset() {
+		machine.reset( program );
+		steps = 0;
+	}
+
+	/*
+	 * Running
+	 */
+
+	//Executes a single line, returning false if there was nothing left to execute
+	public boolean step() {
+
+		if( !machine.hasNextLine() ) {
+			return false;
+		}
+
+		machine.execute();
+		steps++;
+
+		return true;
+	}
+
+	//Runs until the program ends or halts, until maxSteps steps have been taken or until requestStop is called
+	//Returns the number of steps taken
+	public long run( long maxSteps ) {
+
+		if( !machine.hasNextLine() ) {
+			return 0;
+		}
+
+		long taken = machine.run( maxSteps );
+		steps += taken;
+
+		return taken;
+	}
+
+	//Has the thread running the program return from run as soon as it next closes a loop, safe from any thread
+	public void requestStop() {
+		machine.requestYield();
+	}
+
+	/*
+	 * Listening
+	 */
+
+	//Starts sending printed text and errors to a listener, along with everyone else listening
+	public void addListener( MachineOutput listener ) {
+		listeners.add( listener );
+		connectListeners();
+	}
+
+	//Stops sending printed text and errors to a listener
+	public void removeListener( MachineOutput listener ) {
+		listeners.remove( listener );
+		connectListeners();
+	}
+
+	//Stops sending printed text and errors to anyone
+	public void removeAllListeners() {
+		listeners.clear();
+		connectListeners();
+	}
+
+	//Points the machine's output at whoever is listening
+	//A single listener is given the output directly, and with none the machine doesn't produce any
+	private void connectListeners() {
+
+		if( listeners.isEmpty() ) {
+			machine.setOutput( null );
+			return;
+		}
+
+		if( listeners.size() == 1 ) {
+			machine.setOutput( listeners.get( 0 ) );
+			return;
+		}
+
+		final MachineOutput[] outputs = listeners.toArray( new MachineOutput[ listeners.size() ] );
+		machine.setOutput( new MachineOutput() {
+
+			@Override
+			public void print( CharSequence text ) {
+				for( MachineOutput output : outputs ) {
+					output.print( text );
+				}
+			}
+
+			@Override
+			public void error( int line, String str ) {
+				for( MachineOutput output : outputs ) {
+					output.error( line, str );
+				}
+			}
+
+			@Override
+			public void clearConsole() {
+				for( MachineOutput output : outputs ) {
+					output.clearConsole();
+				}
+			}
+
+		});
+
+	}
+
+	/*
+	 * State
+	 */
+
+	//Returns whether there's anything left to execute
+	public boolean hasNextLine() {
+		return machine.hasNextLine();
+	}
+
+	//Returns whether the program stopped because something went wrong
+	public boolean isHalted() {
+		return machine.halt;
+	}
+
+	//Returns the first fault raised while running, or null if there hasn't been one
+	//Programs that never ran because they didn't assemble have no trap, just their errors
+	public Trap getTrap() {
+		return machine.trap;
+	}
+
+	//Returns the line the first fault was raised on, counting from zero, or -1 if there hasn't been one
+	public int getTrapLine() {
+		return machine.trapLine;
+	}
+
+	//Returns the line that will be executed next
+	public int getProgramCounter() {
+		return machine.getRegisterValue( Registers.PC );
+	}
+
+	//Returns the value of a register, by its slot in Registers
+	public int getRegister( int index ) {
+		return machine.getRegisterValue( index );
+	}
+
+	//Returns the value of a register by its name, like R0 or MH
+	//Throws an IllegalArgumentException if there's no register with that name
+	public int getRegister( String name ) {
+
+		int index = Registers.indexOf( name.toUpperCase() );
+		if( index == -1 || index >= machine.registers.length ) {
+			throw new IllegalArgumentException( name );
+		}
+
+		return machine.getRegisterValue( index );
+	}
+
+	//Returns a copy of every register, laid out as described in Registers
+	public int[] getRegisters() {
+		return machine.registers.clone();
+	}
+
+	//Returns the value of main memory at an address
+	//Throws an IndexOutOfBoundsException if the address doesn't exist
+	public int getMemory( int address ) {
+		return machine.mainMemory[ address ];
+	}
+
+	//Sets main memory at an address, to give a program something to work on before it runs
+	//Throws an IndexOutOfBoundsException if the address doesn't exist and an IllegalArgumentException if the value is outside the number range
+	public void setMemory( int address, int value ) {
+
+		if( address < 0 || address >= machine.mainMemory.length ) {
+			throw new IndexOutOfBoundsException( "M" + address );
+		}
+		if( value > machine.configuration.maxNumberRange || value < machine.configuration.minNumberRange ) {
+			throw new IllegalArgumentException( Integer.toString( value ) );
+		}
+
+		machine.writeMainMemory( address, value );
+	}
+
+	//Returns how many addresses main memory has
+	public int getMemoryLength() {
+		return machine.mainMemory.length;
+	}
+
+	//Returns what's in the string buffer
+	public String getStringBuffer() {
+		return machine.readStringBuffer();
+	}
+
+	//Returns how many steps have been taken since the last reset
+	public long getSteps() {
+		return steps;
+	}
+
+	//Returns everything wrong with the program, in line order, which keeps it from running at all
+	public List<Program.AssemblyError> getErrors() {
+		return program.errors;
+	}
+
+	//Returns the program being run
+	public Program getProgram() {
+		return program;
+	}
+
+	//Returns what the engine was set up with
+	public MachineConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	//Returns the results of calls to pure subroutines, and how often they were used
+	public SubroutineCache getSubroutineCache() {
+		return machine.subroutineCache;
+	}
+
+	//Copies the state changed since the last snapshot, for a UI showing the machine
+	public MachineSnapshot snapshot() {
+		return machine.snapshot();
+	}
+
+}
@@ -0,0 +1,80 @@
+package core;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Keeps engines that have finished running around to run something else, so running many programs doesn't mean making a
+//new machine with all of its memory for every one
+//An engine is only ever used by whoever acquired it until it's released, and any thread can acquire and release them
+public class EnginePool {
+
+	//What every engine in the pool is set up with
+	private final MachineConfiguration configuration;
+
+	//How many engines are kept waiting at most, any more released are left for the garbage collector
+	private final int maxIdle;
+
+	//Engines waiting to be used, the most recently released first so their memory is most likely still cached
+	private final ArrayDeque<Engine> idle = new ArrayDeque<Engine>();
+
+	//Metrics, kept for as long as the pool is
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+
+	public EnginePool( MachineConfiguration configuration, int maxIdle ) {
+		this.configuration = configuration;
+		this.maxIdle = maxIdle;
+	}
+
+	//Returns an engine ready to run some code from the beginning, with a listener already hearing about anything wrong with it
+	//The listener may be null for none
+	public Engine acquire( String[] lines, MachineOutput listener ) {
+		return acquire( new Assembler( configuration ).assemble( lines ), listener );
+	}
+
+	//Returns an engine ready to run a program from the beginning, with a listener already hearing about anything wrong with it
+	//The listener may be null for none
+	public Engine acquire( Program program, MachineOutput listener ) {
+
+		Engine engine;
+		synchronized( idle ) {
+			engine = idle.pollFirst();
+		}
+
+		if( engine == null ) {
+			created.incrementAndGet();
+			return new Engine( program, configuration, listener );
+		}
+
+		//Resetting for the new program clears only what the last one left behind
+		reused.incrementAndGet();
+		if( listener != null ) {
+			engine.addListener( listener );
+		}
+		engine.load( program );
+		return engine;
+	}
+
+	//Gives an engine back to be used again, which nothing else may touch from then on
+	public void release( Engine engine ) {
+
+		engine.removeAllListeners();
+
+		synchronized( idle ) {
+			if( idle.size() < maxIdle ) {
+				idle.offerFirst( engine );
+			}
+		}
+
+	}
+
+	//Returns how many engines have been made
+	public long getCreated() {
+		return created.get();
+	}
+
+	//Returns how many times an engine was used again instead of making a new one
+	public long getReused() {
+		return reused.get();
+	}
+
+}
@@ -0,0 +1,51 @@
+package core;
+
+//The execution engines a machine can use, chosen by name with Config.engine
+public enum EngineType {
+
+	//Executes one decoded instruction at a time
+	INTERPRETER {
+		@Override
+		public ExecutionEngine create() {
+			return new InterpreterEngine();
+		}
+	},
+
+	//Binds every instruction to an operation that returns the next line, with no class generation so it starts straight away
+	CLOSURE {
+		@Override
+		public ExecutionEngine create() {
+			return new ClosureEngine();
+		}
+	},
+
+	//Compiles the program to JVM bytecode so it runs as native code once the JIT has warmed up
+	BYTECODE {
+		@Override
+		public ExecutionEngine create() {
+			return new BytecodeEngine();
+		}
+	},
+
+	//Starts on closures and compiles loops to bytecode once they get hot
+	TIERED {
+		@Override
+		public ExecutionEngine create() {
+			return new TieredEngine();
+		}
+	};
+
+	//Creates a new engine of this type
+	public abstract ExecutionEngine create();
+
+	//Returns the engine type with the given name, ignoring case, or null if there isn't one
+	public static EngineType fromName( String name ) {
+		for( EngineType type : values() ) {
+			if( type.name().equalsIgnoreCase( name ) ) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+}
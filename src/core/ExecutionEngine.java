@@ -0,0 +1,12 @@
+package core;
+
+//A way of running a machine's program
+//Every engine must leave the machine in exactly the state the interpreter would, step for step
+public interface ExecutionEngine {
+
+	//Runs until the program ends or halts, until maxSteps steps have been taken or until a yield is requested
+	//Yields only need to be looked for on backward jumps and writes to PC, where the machine is left ready to carry on
+	//Returns the number of steps taken
+	long run( Machine machine, long maxSteps );
+
+}
@@ -0,0 +1,394 @@
+package core;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import misc.Config;
+
+//Runs A1 code sent to it over HTTP on this machine, with no window at all
+//POST the code to /run and a JSON object describing how it ran comes back, the same as a line from the batch runner
+//maxSteps and timeout, in milliseconds, can be given in the query to lower the server's own limits for a single run
+//
+//Code is run on a fixed number of worker threads, with a bounded queue in front of them
+//Anything sent while the queue is full is turned away straight away with a 503, rather than waiting behind everything else
+public class ExecutionServer {
+
+	//Exit status when the command line can't be used or the port can't be listened on
+	public static final int EXIT_BAD_USAGE = 3;
+
+	//The most code a single request can send
+	private static final int maxRequestLength = 1 << 20;
+
+	private static final String usage =
+			"Usage: primary --serve [options]\n" +
+			"  POST code to http://localhost:<port>/run, optionally with ?maxSteps=<n>&timeout=<ms> to lower the limits below\n" +
+			"  --port <n>           Listen on port n, 8100 by default\n" +
+			"  --workers <n>        Run this many programs at once, one for each core by default\n" +
+			"  --queue <n>          Let this many more wait for a worker before turning any away, 64 by default\n" +
+			"  --max-steps <n>      Stop each program after n steps, 10000000 by default\n" +
+			"  --timeout <ms>       Stop each program after this many milliseconds, 2000 by default\n" +
+			"  --engine <name>      Run with the interpreter, closure, bytecode or tiered engine, " + Config.engine + " by default\n" +
+			"  --optimize           Fold constants, remove code that does nothing and skip over BRs before running\n" +
+			"  --no-memoize         Run every subroutine call instead of remembering the results of pure ones\n" +
+			"  --cache-dir <folder> Keep assembled programs in a folder, so code sent before is never assembled again\n" +
+			"  GET http://localhost:<port>/metrics for how many runs were taken on and turned away and how many programs were assembled\n";
+
+	private static final Charset utf8 = Charset.forName( "UTF-8" );
+
+	//The limits on every run, which a request can only lower
+	private final long maxSteps;
+	private final long timeoutMillis;
+
+	//Runs the code, with a bounded queue so anything past capacity is rejected instead of waiting
+	private final ThreadPoolExecutor workers;
+
+	//Engines for the workers to run code on, one for each worker at most
+	private final EnginePool pool;
+
+	//Programs already assembled, so code sent again is never assembled again
+	private final ProgramCache programs;
+
+	//Metrics, kept for as long as the server is
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final AtomicInteger rejected = new AtomicInteger();
+
+	//Accepts connections and reads requests, handing the code off to the workers
+	private HttpServer server;
+
+	public ExecutionServer( int workerCount, int queueLength, long maxSteps, long timeoutMillis ) {
+		this.maxSteps = maxSteps;
+		this.timeoutMillis = timeoutMillis;
+
+		workers = new ThreadPoolExecutor( workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>( queueLength ), new NamedThreadFactory( "Worker" ), new ThreadPoolExecutor.AbortPolicy() );
+		MachineConfiguration configuration = new MachineConfiguration();
+		pool = new EnginePool( configuration, workerCount );
+		programs = new ProgramCache( configuration );
+	}
+
+	public static void main( String[] args ) {
+
+		//Options
+		int port = 8100;
+		int workerCount = Runtime.getRuntime().availableProcessors();
+		int queueLength = 64;
+		long maxSteps = 10000000;
+		long timeoutMillis = 2000;
+
+		for (int i = 0; i < args.length; i++) {
+
+			try {
+				if( args[ i ].equals( "--port" ) && i + 1 < args.length ) {
+					port = Integer.parseInt( args[ ++i ] );
+				}else if( args[ i ].equals( "--workers" ) && i + 1 < args.length ) {
+					workerCount = Integer.parseInt( args[ ++i ] );
+				}else if( args[ i ].equals( "--queue" ) && i + 1 < args.length ) {
+					queueLength = Integer.parseInt( args[ ++i ] );
+				}else if( args[ i ].equals( "--max-steps" ) && i + 1 < args.length ) {
+					maxSteps = Long.parseLong( args[ ++i ] );
+				}else if( args[ i ].equals( "--timeout" ) && i + 1 < args.length ) {
+					timeoutMillis = Long.parseLong( args[ ++i ] );
+				}else if( args[ i ].equals( "--engine" ) && i + 1 < args.length ) {
+					i++;
+					if( EngineType.fromName( args[ i ] ) == null ) {
+						exitWithUsage();
+					}
+					Config.engine = args[ i ];
+				}else if( args[ i ].equals( "--optimize" ) ) {
+					Config.optimize = true;
+				}else if( args[ i ].equals( "--no-memoize" ) ) {
+					Config.memoizeSubroutines = false;
+				}else if( args[ i ].equals( "--cache-dir" ) && i + 1 < args.length ) {
+					Config.programCacheFolder = args[ ++i ];
+				}else {
+					exitWithUsage();
+				}
+			} catch ( NumberFormatException e ) {
+				exitWithUsage();
+			}
+
+		}
+
+		if( port < 0 || port > 65535 || workerCount < 1 || queueLength < 1 || maxSteps < 1 || timeoutMillis < 1 ) {
+			exitWithUsage();
+		}
+
+		ExecutionServer executionServer = new ExecutionServer( workerCount, queueLength, maxSteps, timeoutMillis );
+		try {
+			executionServer.start( port );
+		} catch ( IOException e ) {
+			System.err.println( "Could not listen on port " + port + ": " + e.getMessage() );
+			System.exit( EXIT_BAD_USAGE );
+		}
+
+		System.err.println( "Listening on http://localhost:" + port + "/run with " + workerCount + " workers" );
+
+	}
+
+	//Prints the usage and exits
+	private static void exitWithUsage() {
+		System.err.print( usage );
+		System.exit( EXIT_BAD_USAGE );
+	}
+
+	//Starts listening on a port, only for connections from this machine
+	public void start( int port ) throws IOException {
+
+		server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+
+		//Requests are only read and handed off here, so a couple of threads keep up with any number of workers
+		server.setExecutor( Executors.newFixedThreadPool( 2, new NamedThreadFactory( "Http" ) ) );
+
+		server.createContext( "/run", new HttpHandler() {
+
+			@Override
+			public void handle( HttpExchange exchange ) throws IOException {
+				handleRun( exchange );
+			}
+
+		});
+
+		server.createContext( "/metrics", new HttpHandler() {
+
+			@Override
+			public void handle( HttpExchange exchange ) throws IOException {
+				handleMetrics( exchange );
+			}
+
+		});
+
+		server.start();
+
+	}
+
+	//Stops listening, lets anything already running finish and then stops the workers
+	public void stop() {
+		server.stop( 0 );
+		( (ExecutorService) server.getExecutor() ).shutdown();
+		workers.shutdown();
+	}
+
+	//Returns how many runs have been taken on
+	public int getAccepted() {
+		return accepted.get();
+	}
+
+	//Returns how many runs were turned away because every worker was busy and the queue was full
+	public int getRejected() {
+		return rejected.get();
+	}
+
+	//Reads a request to run some code and queues it for a worker, or turns it away
+	private void handleRun( final HttpExchange exchange ) throws IOException {
+
+		if( !exchange.getRequestMethod().equals( "POST" ) ) {
+			exchange.getResponseHeaders().set( "Allow", "POST" );
+			respondWithError( exchange, 405, "code has to be sent with POST" );
+			return;
+		}
+
+		//Work out the limits for this run
+		long requestMaxSteps = maxSteps;
+		long requestTimeoutMillis = timeoutMillis;
+		String query = exchange.getRequestURI().getRawQuery();
+		if( query != null ) {
+			for( String parameter : query.split( "&" ) ) {
+
+				int equals = parameter.indexOf( '=' );
+				String name = equals == -1 ? parameter : decode( parameter.substring( 0, equals ) );
+				String value = equals == -1 ? "" : decode( parameter.substring( equals + 1 ) );
+
+				try {
+					if( name.equals( "maxSteps" ) ) {
+						requestMaxSteps = Math.min( maxSteps, Long.parseLong( value ) );
+					}else if( name.equals( "timeout" ) ) {
+						requestTimeoutMillis = Math.min( timeoutMillis, Long.parseLong( value ) );
+					}
+				} catch ( NumberFormatException e ) {
+					respondWithError( exchange, 400, name + " has to be a number" );
+					return;
+				}
+
+			}
+		}
+		if( requestMaxSteps < 0 || requestTimeoutMillis < 0 ) {
+			respondWithError( exchange, 400, "limits can't be negative" );
+			return;
+		}
+
+		//Nothing is read if it would only be turned away, so a busy server doesn't spend time and memory on code it won't run
+		if( workers.getQueue().remainingCapacity() == 0 ) {
+			turnAway( exchange );
+			return;
+		}
+
+		//Read the code
+		byte[] body = readBody( exchange.getRequestBody() );
+		if( body == null ) {
+			respondWithError( exchange, 413, "code can't be longer than " + maxRequestLength + " bytes" );
+			return;
+		}
+
+		//Split it the same way the code window does so line numbers match
+		final String[] lines = new String( body, utf8 ).split( "\\r?\\n", -1 );
+		final long runMaxSteps = requestMaxSteps;
+		final long runTimeoutNanos = requestTimeoutMillis * 1000000;
+
+		try {
+			workers.execute( new Runnable() {
+
+				@Override
+				public void run() {
+					runCode( exchange, lines, runMaxSteps, runTimeoutNanos );
+				}
+
+			});
+			accepted.incrementAndGet();
+		} catch ( RejectedExecutionException e ) {
+			//The queue filled up while this was being read
+			turnAway( exchange );
+		}
+
+	}
+
+	//Tells whoever sent a run that every worker is busy and the queue is full
+	private void turnAway( HttpExchange exchange ) throws IOException {
+		rejected.incrementAndGet();
+		exchange.getResponseHeaders().set( "Retry-After", "1" );
+		respondWithError( exchange, 503, "every worker is busy" );
+	}
+
+	//Sends back how many runs were taken on and turned away, and how often code didn't need assembling
+	private void handleMetrics( HttpExchange exchange ) throws IOException {
+
+		StringBuilder json = new StringBuilder( "{" );
+		json.append( "\"accepted\":" ).append( accepted.get() );
+		json.append( ",\"rejected\":" ).append( rejected.get() );
+		json.append( ",\"running\":" ).append( workers.getActiveCount() );
+		json.append( ",\"queued\":" ).append( workers.getQueue().size() );
+		json.append( ",\"programsAssembled\":" ).append( programs.getMisses() );
+		json.append( ",\"programsFoundInMemory\":" ).append( programs.getMemoryHits() );
+		json.append( ",\"programsFoundOnDisk\":" ).append( programs.getDiskHits() );
+		json.append( ",\"programsForgotten\":" ).append( programs.getEvictions() );
+		json.append( ",\"programCacheErrors\":" ).append( programs.getDiskErrors() );
+		json.append( ",\"programLinesInMemory\":" ).append( programs.getLineCount() );
+		json.append( '}' );
+
+		respond( exchange, 200, json.toString() );
+		exchange.close();
+	}
+
+	//Runs code on a worker and sends back how it went
+	private void runCode( HttpExchange exchange, String[] lines, long runMaxSteps, long runTimeoutNanos ) {
+
+		try {
+
+			Program program = programs.get( lines );
+			ProgramRun run = ProgramRun.run( pool, program, null, runMaxSteps, runTimeoutNanos );
+
+			StringBuilder json = new StringBuilder( "{\"lines\":" ).append( program.getLineCount() );
+			run.appendJson( json );
+			json.append( '}' );
+
+			respond( exchange, 200, json.toString() );
+
+		} catch ( IOException ignored ) {
+			//Whoever sent it has gone away, so there's nobody to tell
+		} catch ( Throwable e ) {
+			//Anything else going wrong, even running out of stack, is sent back instead of taking the worker down with it
+			try {
+				respondWithError( exchange, 500, e.toString() );
+			} catch ( IOException ignored ) {
+				//Whoever sent it has gone away, so there's nobody to tell
+			}
+		} finally {
+			exchange.close();
+		}
+
+	}
+
+	//Reads a request's body, or returns null if it's longer than maxRequestLength
+	private static byte[] readBody( InputStream input ) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] chunk = new byte[ 8192 ];
+
+		int read;
+		while( ( read = input.read( chunk ) ) != -1 ) {
+			body.write( chunk, 0, read );
+			if( body.size() > maxRequestLength ) {
+				return null;
+			}
+		}
+
+		return body.toByteArray();
+	}
+
+	//Decodes part of a query
+	private static String decode( String text ) {
+		try {
+			return URLDecoder.decode( text, "UTF-8" );
+		} catch ( UnsupportedEncodingException e ) {
+			//Every JVM supports UTF-8
+			throw new IllegalStateException( e );
+		}
+	}
+
+	//Sends back a JSON object saying why a request couldn't be run
+	private static void respondWithError( HttpExchange exchange, int status, String message ) throws IOException {
+		StringBuilder json = new StringBuilder( "{\"error\":" );
+		ProgramRun.appendString( json, message );
+		json.append( '}' );
+
+		respond( exchange, status, json.toString() );
+		exchange.close();
+	}
+
+	//Sends back a JSON object
+	private static void respond( HttpExchange exchange, int status, String json ) throws IOException {
+		byte[] bytes = json.getBytes( utf8 );
+
+		exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+		exchange.sendResponseHeaders( status, bytes.length );
+
+		OutputStream output = exchange.getResponseBody();
+		output.write( bytes );
+		output.close();
+	}
+
+	//Names threads so they can be told apart when debugging
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		public NamedThreadFactory( String name ) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread( Runnable runnable ) {
+			return new Thread( runnable, name + "-" + count.incrementAndGet() );
+		}
+
+	}
+
+}
@@ -0,0 +1,234 @@
+package core;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import misc.Config;
+import misc.Strings;
+
+//Runs an A1 file from the command line with no window at all
+//PRNT output goes to stdout, errors and exit messages go to stderr
+public class HeadlessRunner implements MachineOutput{
+
+	//Exit statuses
+	public static final int EXIT_NORMAL = 0;
+	public static final int EXIT_WITH_ERROR = 1;
+	public static final int EXIT_STEP_LIMIT = 2;
+	public static final int EXIT_BAD_USAGE = 3;
+
+	private static final String usage =
+			"Usage: HeadlessRunner [options] <file." + Config.fileExtension + ">\n" +
+			"  --max-steps <n>      Stop after n steps, exiting with status " + EXIT_STEP_LIMIT + "\n" +
+			"  --engine <name>      Run with the interpreter, closure, bytecode or tiered engine, " + Config.engine + " by default\n" +
+			"  --buffer-size <n>    Let the string buffer hold n characters, " + Config.stringBufferSize + " by default\n" +
+			"  --output <file>      Write PRNT output to a file instead of standard output\n" +
+			"  --optimize           Fold constants, remove code that does nothing and skip over BRs before running\n" +
+			"  --no-memoize         Run every subroutine call instead of remembering the results of pure ones\n" +
+			"  --cache-dir <folder> Keep the assembled program in a folder, so it's never assembled again until the file changes\n" +
+			"  --dump-registers     Print every register once the program stops\n" +
+			"  --dump-memory        Print every non-zero main memory address once the program stops\n" +
+			"  --metrics            Print how the tiered engine compiled the program and how many calls were remembered to standard error\n";
+
+	//Where program output goes
+	private PrintStream out;
+
+	//Where errors go
+	private PrintStream err;
+
+	//Printed text is encoded into this before it's written, the string buffer only ever holds ASCII
+	private byte[] printBytes = new byte[ 0 ];
+
+	public HeadlessRunner( PrintStream out, PrintStream err ) {
+		this.out = out;
+		this.err = err;
+	}
+
+	public static void main( String[] args ) {
+
+		//Options
+		long maxSteps = Long.MAX_VALUE;
+		boolean dumpRegisters = false;
+		boolean dumpMemory = false;
+		boolean printMetrics = false;
+		String outputFileName = null;
+		String fileName = null;
+		MachineConfiguration configuration = new MachineConfiguration();
+
+		for (int i = 0; i < args.length; i++) {
+
+			if( args[ i ].equals( "--max-steps" ) && i + 1 < args.length ) {
+				i++;
+				try {
+					maxSteps = Long.parseLong( args[ i ] );
+				} catch ( NumberFormatException e ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--engine" ) && i + 1 < args.length ) {
+				i++;
+				configuration.engineType = EngineType.fromName( args[ i ] );
+				if( configuration.engineType == null ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--buffer-size" ) && i + 1 < args.length ) {
+				i++;
+				try {
+					configuration.stringBufferSize = Integer.parseInt( args[ i ] );
+				} catch ( NumberFormatException e ) {
+					exitWithUsage();
+				}
+				if( configuration.stringBufferSize < 1 ) {
+					exitWithUsage();
+				}
+			}else if( args[ i ].equals( "--output" ) && i + 1 < args.length ) {
+				i++;
+				outputFileName = args[ i ];
+			}else if( args[ i ].equals( "--optimize" ) ) {
+				configuration.optimize = true;
+			}else if( args[ i ].equals( "--no-memoize" ) ) {
+				configuration.memoizeSubroutines = false;
+			}else if( args[ i ].equals( "--cache-dir" ) && i + 1 < args.length ) {
+				i++;
+				Config.programCacheFolder = args[ i ];
+			}else if( args[ i ].equals( "--dump-registers" ) ) {
+				dumpRegisters = true;
+			}else if( args[ i ].equals( "--dump-memory" ) ) {
+				dumpMemory = true;
+			}else if( args[ i ].equals( "--metrics" ) ) {
+				printMetrics = true;
+			}else if( fileName == null && !args[ i ].startsWith( "--" ) ) {
+				fileName = args[ i ];
+			}else {
+				exitWithUsage();
+			}
+
+		}
+
+		if( fileName == null ) {
+			exitWithUsage();
+		}
+
+		//Read the code
+		//Split it the same way the code window does so line numbers match
+		String[] lines = null;
+		try {
+			String code = new String( Files.readAllBytes( Paths.get( fileName ) ), Charset.forName( "UTF-8" ) );
+			lines = code.split( "\\r?\\n", -1 );
+		} catch ( IOException e ) {
+			System.err.println( "Could not read " + fileName + ": " + e.getMessage() );
+			System.exit( EXIT_BAD_USAGE );
+		}
+
+		//System.out flushes on every line, which is far too slow for programs that print a lot
+		FileOutputStream outputStream = null;
+		if( outputFileName == null ) {
+			outputStream = new FileOutputStream( FileDescriptor.out );
+		}else {
+			try {
+				outputStream = new FileOutputStream( outputFileName );
+			} catch ( IOException e ) {
+				System.err.println( "Could not write " + outputFileName + ": " + e.getMessage() );
+				System.exit( EXIT_BAD_USAGE );
+			}
+		}
+		PrintStream out = new PrintStream( new BufferedOutputStream( outputStream, 1 << 16 ), false );
+
+		HeadlessRunner runner = new HeadlessRunner( out, System.err );
+		int status = runner.run( lines, configuration, maxSteps, dumpRegisters, dumpMemory, printMetrics );
+
+		out.close();
+		System.exit( status );
+
+	}
+
+	//Prints the usage and exits
+	private static void exitWithUsage() {
+		System.err.print( usage );
+		System.exit( EXIT_BAD_USAGE );
+	}
+
+	//Assembles and runs code to completion on a machine set up the way a configuration says to, returning the exit status
+	public int run( String[] lines, MachineConfiguration configuration, long maxSteps, boolean dumpRegisters, boolean dumpMemory, boolean printMetrics ) {
+
+		//Programs are only kept between runs when there's a folder to keep them in
+		ProgramCache programs = new ProgramCache( configuration );
+
+		Machine machine = new Machine( this, configuration );
+		machine.reset( programs.get( lines ) );
+
+		machine.run( maxSteps );
+
+		//Work out how we stopped
+		int status;
+		if( machine.halt ) {
+			err.println( Strings.ExitWithError );
+			status = EXIT_WITH_ERROR;
+		}else if( machine.hasNextLine() ) {
+			err.println( Strings.ExitStepLimit );
+			status = EXIT_STEP_LIMIT;
+		}else {
+			err.println( Strings.ExitNormal );
+			status = EXIT_NORMAL;
+		}
+
+		if( dumpRegisters ) {
+			for (int i = 0; i < machine.registers.length; i++) {
+				out.println( Registers.getName( i ) + " " + machine.registers[ i ] );
+			}
+		}
+
+		if( dumpMemory ) {
+			for (int i = 0; i < machine.mainMemory.length; i++) {
+				if( machine.mainMemory[ i ] != 0 ) {
+					out.println( "M" + i + " " + machine.mainMemory[ i ] );
+				}
+			}
+		}
+
+		if( printMetrics && machine.engine instanceof TieredEngine ) {
+			TieredEngine engine = (TieredEngine) machine.engine;
+			err.println( "Loops compiled: " + engine.getTierUps() + ", failed: " + engine.getFailedTierUps() );
+			err.println( "Compile time: " + ( engine.getCompileNanos() / 1000 ) + " us" );
+			err.println( "Compiled steps: " + engine.getCompiledSteps() + " of " + engine.getTotalSteps() );
+		}
+
+		if( printMetrics ) {
+			SubroutineCache cache = machine.subroutineCache;
+			err.println( "Subroutine calls remembered: " + cache.getHits() + ", run: " + cache.getMisses() + ", forgotten: " + cache.getEvictions() );
+			err.println( "Program assembled: " + ( programs.getMisses() > 0 ? "yes" : "no, found on disk" ) );
+		}
+
+		return status;
+	}
+
+	//Written a byte per character with no strings in between
+	@Override
+	public void print( CharSequence text ) {
+		int length = text.length();
+
+		if( printBytes.length < length ) {
+			printBytes = new byte[ Math.max( length, printBytes.length * 2 ) ];
+		}
+
+		for (int i = 0; i < length; i++) {
+			printBytes[ i ] = (byte) text.charAt( i );
+		}
+
+		out.write( printBytes, 0, length );
+		out.println();
+	}
+
+	@Override
+	public void error( int line, String str ) {
+		err.println( "Line #" + line + ": " + str );
+	}
+
+	//There is no console to clear
+	@Override
+	public void clearConsole() {}
+
+}
@@ -0,0 +1,55 @@
+package core;
+
+//A single line of code decoded once at assembly time so that stepping never has to parse text
+public class Instruction {
+
+	//Used in place of a register slot when an argument is a literal
+	public static final int LITERAL = -1;
+
+	//What this instruction does
+	public final Opcode opcode;
+
+	//The line this instruction was decoded from
+	public final int line;
+
+	//The line the program counter moves to when this instruction is fetched
+	//This is the next executable line, or the line count if there isn't one
+	public final int next;
+
+	//First source argument
+	//If aRegister is a register slot the value comes from that register, otherwise it is LITERAL and aValue is used
+	public final int aRegister;
+	public final int aValue;
+
+	//Second source argument, same rules as the first
+	public final int bRegister;
+	public final int bValue;
+
+	//The slot of the register this instruction writes to, if any
+	public final int destination;
+
+	//The line a branch moves the program counter to when it is taken
+	public final int target;
+
+	//The error to report if this is an INVALID instruction
+	public final String error;
+
+	public Instruction( Opcode opcode, int line, int next, int aRegister, int aValue, int bRegister, int bValue, int destination, int target, String error ) {
+		this.opcode = opcode;
+		this.line = line;
+		this.next = next;
+		this.aRegister = aRegister;
+		this.aValue = aValue;
+		this.bRegister = bRegister;
+		this.bValue = bValue;
+		this.destination = destination;
+		this.target = target;
+		this.error = error;
+	}
+
+	//Creates an instruction that reports an error when it is run
+	public static Instruction invalid( int line, int next, String error ) {
+		return new Instruction( Opcode.INVALID, line, next, LITERAL, 0, LITERAL, 0, LITERAL, -1, error );
+	}
+
+}
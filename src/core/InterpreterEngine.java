@@ -0,0 +1,28 @@
+package core;
+
+//Runs a program one decoded instruction at a time using Machine.step
+public class InterpreterEngine implements ExecutionEngine {
+
+	@Override
+	public long run( Machine machine, long maxSteps ) {
+
+		long steps = 0;
+
+		while( steps < maxSteps && machine.hasNextLine() ) {
+
+			int line = machine.registers[ Registers.PC ];
+
+			steps += machine.step( maxSteps - steps );
+
+			//Only a jump backwards can keep a program running, so that's the only place a yield is looked for
+			//apart from the return of a call the machine is running through us
+			if( ( machine.registers[ Registers.PC ] <= line || machine.isCallReturned ) && machine.takeYieldRequest() ) {
+				break;
+			}
+
+		}
+
+		return steps;
+	}
+
+}
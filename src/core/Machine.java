@@ -0,0 +1,870 @@
+package core;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import misc.Config;
+import misc.Strings;
+
+//The state of the A1 machine and the logic that executes instructions against it
+//This knows nothing about the UI so it can run on any thread, or with no window at all
+public class Machine {
+
+	//Main memory is cleared between runs a page at a time, only clearing the pages that were written
+	private static final int MEMORY_PAGE_SHIFT = 6;
+	private static final int MEMORY_PAGE_SIZE = 1 << MEMORY_PAGE_SHIFT;
+
+	//A flag that stops the next step from executing when set
+	//Only ever touched by the thread running the machine
+	public boolean halt = false;
+	
+	//Set from any thread to have the engine running the program return at its next backward jump or write to PC
+	//Nothing can run forever without one of those, so it's seen within a program's length of steps
+	public volatile boolean isYieldRequested = false;
+	
+	//Where printed text and errors go, or null if nothing is listening
+	//Nothing is worked out for output that has nowhere to go
+	private MachineOutput output;
+
+	//The shape of the machine, which every program it runs has to have been assembled for
+	public final MachineConfiguration configuration;
+
+	//The actual registers themselves, laid out as described in Registers
+	public int[] registers;
+	
+	//The program currently being run
+	public Program program;
+	
+	//Main memory's array
+	public int[] mainMemory;
+	
+	//The string buffer's characters, empty slots are 0
+	public char[] stringBuffer;
+	
+	//Keeps track of where we are in the string buffer so we don't overwrite anything
+	//Nothing at or past this has been written since the last clear, so it's also how much a clear has to reset
+	public int stringBufferPosition = 0;
+	
+	//Tracks the line being executed for error reporting
+	public int lastLine = -1;
+	
+	//The first fault raised since the last reset and the line that raised it, or null if nothing has gone wrong
+	public Trap trap = null;
+	public int trapLine = -1;
+
+	//What runs the program when more than a single step is taken
+	public final ExecutionEngine engine;
+	
+	//The results of calls to the program's pure subroutines
+	public SubroutineCache subroutineCache = new SubroutineCache();
+	
+	//The pure subroutine whose lines the engine is running because its result wasn't remembered, or null if there isn't one
+	//and whether it has returned, which has the engine hand back as if a yield had been requested
+	private Subroutine runningCall = null;
+	public boolean isCallReturned = false;
+	
+	//The main memory addresses written since the last snapshot, so only those have to be updated in the UI
+	private int[] dirtyMemoryAddresses;
+	private int dirtyMemoryCount = 0;
+	private boolean[] isMemoryAddressDirty;
+	
+	//The pages of main memory written since the last reset, so only those have to be cleared for the next run
+	private int[] writtenMemoryPages;
+	private int writtenMemoryPageCount = 0;
+	private boolean[] isMemoryPageWritten;
+	
+	//The range of the string buffer changed since the last snapshot, empty when the start is past the end
+	private int stringBufferDirtyStart = Integer.MAX_VALUE;
+	private int stringBufferDirtyEnd = 0;
+	
+	//Is set up the way Config says to
+	public Machine( MachineOutput output ) {
+		this( output, new MachineConfiguration() );
+	}
+
+	//Is set up the way a configuration says to, with an engine of its own that no other machine can share
+	public Machine( MachineOutput output, MachineConfiguration configuration ) {
+		this.output = output;
+		this.configuration = configuration.copy();
+		this.engine = configuration.engineType.create();
+
+		registers = new int[ configuration.getRegisterSlots() ];
+		mainMemory = new int[ configuration.mainMemoryLength ];
+		stringBuffer = new char[ configuration.stringBufferSize ];
+
+		dirtyMemoryAddresses = new int[ configuration.mainMemoryLength ];
+		isMemoryAddressDirty = new boolean[ configuration.mainMemoryLength ];
+
+		writtenMemoryPages = new int[ ( configuration.mainMemoryLength + MEMORY_PAGE_SIZE - 1 ) >> MEMORY_PAGE_SHIFT ];
+		isMemoryPageWritten = new boolean[ writtenMemoryPages.length ];
+	}
+
+	//Changes where printed text and errors go, null for nowhere
+	public void setOutput( MachineOutput output ) {
+		this.output = output;
+	}
+
+	//Resets the machine to run a program from the start
+	//Throws an IllegalArgumentException if the program was assembled for a machine of another shape
+	public void reset( Program program ) {
+		
+		//Everything proven about the program only holds on the machine it was assembled for
+		if( !program.configuration.hasSameMachine( configuration ) ) {
+			throw new IllegalArgumentException( "The program was assembled for a different machine" );
+		}
+		
+		//Results are only remembered for the program they came from
+		if( program != this.program ) {
+			subroutineCache.clear();
+		}
+		
+		this.program = program;
+		
+		//Clear registers
+		clearRegisters();
+		
+		//Clear whatever the last run left in main memory
+		clearMainMemory();
+		
+		//Reset halt
+		halt = false;
+		
+		//Anything asked of the last program doesn't apply to this one
+		isYieldRequested = false;
+		runningCall = null;
+		isCallReturned = false;
+		
+		//Reset last line
+		lastLine = 0;
+		
+		//Forget the last program's fault
+		trap = null;
+		trapLine = -1;
+		
+		//A program that didn't verify is never run, everything wrong with it is reported up front instead
+		if( !program.isVerified ) {
+			for( Program.AssemblyError assemblyError : program.errors ) {
+				if( output != null ) {
+					output.error( assemblyError.line + 1, assemblyError.message );
+				}
+			}
+			halt = true;
+		}
+		
+		//Reset string buffer
+		clearStringBuffer();
+		
+		//Reset the memory head
+		setRegisterValue( Registers.MH, 0 );
+		
+		//Move the program counter to the first executable line
+		setRegisterValue( Registers.PC, program.getFirstExecutableLine() );
+		
+		//If there's nothing to execute, throw an error to that effect
+		if( getRegisterValue( Registers.PC ) >= program.getLineCount() ) {
+			error( Strings.EmptyFile );
+		}
+		
+	}
+
+	//Reports a problem with the program as a whole, found before anything runs
+	private void error( String str ) {
+		if( output != null ) {
+			output.error( lastLine, str );
+		}
+		halt = true;
+	}
+
+	//Halts the machine with a fault raised by the instruction on a line
+	//Only the first trap is reported, so a fault that would lead to others is reported once and on the line that caused it
+	public void trap( Trap trap, int line ) {
+		trap( trap, line, trap.getMessage( this ) );
+	}
+
+	//Halts the machine with a fault raised by the instruction on a line, reported with a message of its own
+	public void trap( Trap trap, int line, String message ) {
+		
+		if( this.trap == null ) {
+			this.trap = trap;
+			trapLine = line;
+			restoreProgramCounter();
+			
+			//People count lines from one
+			if( output != null ) {
+				output.error( line + 1, message );
+			}
+		}
+		
+		halt = true;
+	}
+
+	//Leaves the program counter where a fault would have left it in the program as written
+	//The optimizer sends lines on past the lines it removed, so otherwise an optimized run could stop somewhere else
+	private void restoreProgramCounter() {
+
+		Instruction instruction = program.getInstruction( trapLine );
+
+		//Anything that writes PC leaves it holding what was written either way
+		if( instruction.destination == Registers.PC ) {
+			return;
+		}
+
+		//Every line that was written as code is decoded, so it's the next line that isn't INVALID
+		int next = trapLine + 1;
+		while( next < program.getLineCount() && program.instructions[ next ].opcode == Opcode.INVALID ) {
+			next++;
+		}
+		registers[ Registers.PC ] = next;
+	}
+
+	//Halts the machine with a fault raised by the instruction being executed
+	private void trap( Trap trap ) {
+		trap( trap, lastLine );
+	}
+	
+	//Places a value into a register and traps if the value is out of bounds
+	//The value is still stored so it can be seen where it went wrong
+	//Register slots are proven valid by the Verifier before anything runs
+	public void setRegisterValue( int index, int value ) {
+
+		//Put the value into the register
+		registers[ index ] = value;
+
+		//Check for out of bounds errors
+		if( value > configuration.maxNumberRange || value < configuration.minNumberRange ) {
+			trap( Trap.NUMBER_OUT_OF_BOUNDS );
+			return;
+		}
+
+		//Nothing comes before the first line, so the program counter can't be moved there
+		if( index == Registers.PC && value < 0 ) {
+			trap( Trap.INVALID_JUMP_TARGET );
+		}
+
+		//Only writing the memory head can move it, so this is the only place it needs checking
+		if( index == Registers.MH && ( value < 0 || value >= mainMemory.length ) ) {
+			trap( Trap.MEMORY_HEAD_OUT_OF_BOUNDS );
+		}
+
+	}
+
+	//Returns the value of a register
+	public int getRegisterValue( int index ) {
+		return registers[ index ];
+	}
+	
+	//Stores a value into main memory at an address and traps if that memory address doesn't exist
+	public void setMainMemoryValue( int address, int value ) {
+		
+		//Check for out of bounds addresses
+		if( address < 0 || address >= mainMemory.length ) {
+			trap( Trap.MEMORY_HEAD_OUT_OF_BOUNDS );
+			return;
+		}
+		
+		writeMainMemory( address, value );
+		
+	}
+	
+	//Stores a value into main memory at an address that's already known to exist
+	//Used by LOAD and STORE, since MH is checked whenever it's written and so always holds a valid address
+	public void writeMainMemory( int address, int value ) {
+		
+		//Store the value at the address
+		mainMemory[ address ] = value;
+		
+		//Remember that the UI needs to be updated
+		markMemoryAddressDirty( address );
+		
+		//Remember that the page needs clearing before the next run
+		int page = address >> MEMORY_PAGE_SHIFT;
+		if( !isMemoryPageWritten[ page ] ) {
+			isMemoryPageWritten[ page ] = true;
+			writtenMemoryPages[ writtenMemoryPageCount ] = page;
+			writtenMemoryPageCount++;
+		}
+		
+	}
+	
+	//Remembers that an address needs updating in the UI
+	private void markMemoryAddressDirty( int address ) {
+		if( !isMemoryAddressDirty[ address ] ) {
+			isMemoryAddressDirty[ address ] = true;
+			dirtyMemoryAddresses[ dirtyMemoryCount ] = address;
+			dirtyMemoryCount++;
+		}
+	}
+	
+	//Zeroes every page of main memory written since the last reset
+	//Nothing else can hold anything but zero, so the rest of memory is never touched
+	public void clearMainMemory() {
+		
+		for (int i = 0; i < writtenMemoryPageCount; i++) {
+			
+			int page = writtenMemoryPages[ i ];
+			int start = page << MEMORY_PAGE_SHIFT;
+			int end = Math.min( start + MEMORY_PAGE_SIZE, mainMemory.length );
+			
+			//Only addresses that change have to be updated in the UI
+			for (int address = start; address < end; address++) {
+				if( mainMemory[ address ] != 0 ) {
+					mainMemory[ address ] = 0;
+					markMemoryAddressDirty( address );
+				}
+			}
+			
+			isMemoryPageWritten[ page ] = false;
+		}
+		
+		writtenMemoryPageCount = 0;
+		
+	}
+	
+	//Returns the value of main memory at a given address and traps if that memory address doesn't exist
+	//Returns 0 after trapping, which is never used since the machine has halted
+	public int getMainMemoryValue( int address ) {
+		
+		//Check for out of bounds addresses
+		if( address < 0 || address >= mainMemory.length ) {
+			trap( Trap.MEMORY_HEAD_OUT_OF_BOUNDS );
+			return 0;
+		}
+		
+		//Return the cleared value
+		return mainMemory[ address ];
+		
+	}
+	
+	//Writes a character to the string buffer
+	public void writeToStringBuffer( int value ) {
+		
+		//The value must be in the appropriate ASCII range
+		if( value < 32 || value > 126 ) {
+			trap( Trap.BUFFER_VALUE_OUT_OF_ASCII_RANGE );
+			return;
+		}
+		
+		//There must be room left for it
+		if( stringBufferPosition >= stringBuffer.length ) {
+			trap( Trap.STRING_BUFFER_FULL );
+			return;
+		}
+		
+		//Write to buffer
+		stringBuffer[ stringBufferPosition ] = (char) value;
+		
+		//Remember that the UI needs to be updated
+		markStringBufferDirty( stringBufferPosition, stringBufferPosition + 1 );
+		
+		//Increment our stringBufferPosition
+		stringBufferPosition++;
+		
+	}
+	
+	//Returns the full string from the string buffer
+	public String readStringBuffer() {
+		return new String( stringBuffer, 0, stringBufferPosition );
+	}
+	
+	//Returns a view of what's in the string buffer without any surrounding spaces, the same as trimming it
+	//Nothing is copied, so the view changes along with the buffer
+	public CharSequence viewStringBuffer() {
+		int start = 0;
+		int end = stringBufferPosition;
+		
+		while( start < end && stringBuffer[ start ] <= ' ' ) {
+			start++;
+		}
+		
+		while( end > start && stringBuffer[ end - 1 ] <= ' ' ) {
+			end--;
+		}
+		
+		return CharBuffer.wrap( stringBuffer, start, end - start );
+	}
+	
+	//Clears the string buffer
+	//Only the characters written since the last clear are reset
+	public void clearStringBuffer() {
+		
+		if( stringBufferPosition > 0 ) {
+			
+			//Reset every written character
+			Arrays.fill( stringBuffer, 0, stringBufferPosition, (char) 0 );
+			
+			//Remember that the UI needs to be updated
+			markStringBufferDirty( 0, stringBufferPosition );
+			
+		}
+		
+		//Reset the string buffer position
+		stringBufferPosition = 0;
+		
+	}
+	
+	//Grows the range of the string buffer the UI needs to update to include start up to, but not including, end
+	private void markStringBufferDirty( int start, int end ) {
+		stringBufferDirtyStart = Math.min( stringBufferDirtyStart, start );
+		stringBufferDirtyEnd = Math.max( stringBufferDirtyEnd, end );
+	}
+	
+	//Clears the registers
+	public void clearRegisters() {
+		Arrays.fill( registers, 0 );
+	}
+
+	//Gets the value of a decoded argument, either from its register or as a literal
+	public int getArgumentValue( int register, int literal ) {
+		if( register != Instruction.LITERAL ) {
+			return getRegisterValue( register );
+		}else {
+			//Otherwise it's a literal
+			return literal;
+		}
+	}
+	
+	//Returns whether or not there is a next line available for execution
+	public boolean hasNextLine() {
+		
+		//Halt if we need to
+		if( halt ) {
+			return false;
+		}
+		
+		//Checks if the program counter is below the line count
+		return getRegisterValue( Registers.PC ) < program.getLineCount();
+	}
+	
+	//Executes the next instruction
+	//Arguably this is the entire program
+	public void execute() {
+		
+		//Get the current instruction
+		Instruction instruction = program.getInstruction( getRegisterValue( Registers.PC ) );
+		
+		//Move the program counter to the next executable line
+		setRegisterValue( Registers.PC, instruction.next );
+		
+		//Update last line
+		lastLine = instruction.line;
+		
+		//We're going to use a switch case for this
+		switch( instruction.opcode ) {
+		case MOV:
+			MOV( instruction );
+			break;
+		case ADD:
+			ADD( instruction );
+			break;
+		case SUB:
+			SUB( instruction );
+			break;
+		case BNE:
+			BNE( instruction );
+			break;
+		case BEQ:
+			BEQ( instruction );
+			break;
+		case BGT:
+			BGT( instruction );
+			break;
+		case BLT:
+			BLT( instruction );
+			break;
+		case BR:
+			BR( instruction );
+			break;
+		case LOAD:
+			LOAD( instruction );
+			break;
+		case STORE:
+			STORE( instruction );
+			break;
+		case APND:
+			APND( instruction );
+			break;
+		case DUMP:
+			DUMP();
+			break;
+		case PRNT:
+			PRNT();
+			break;
+		case CLR:
+			CLR();
+			break;
+		case ASL:
+			ASL( instruction );
+			break;
+		case ASR:
+			ASR( instruction );
+			break;
+		case INVALID:
+			trap( Trap.INVALID_INSTRUCTION, instruction.line, instruction.error );
+			break;
+		}
+		
+	}
+
+	//Executes the next instruction, or the whole call if it starts a pure subroutine, taking no more than budget steps
+	//Returns the number of steps taken, a remembered call counts as one and every line run counts as its own
+	//Used by engines, single steps always go through execute so every line can be seen
+	public long step( long budget ) {
+		
+		int line = getRegisterValue( Registers.PC );
+		Subroutine subroutine = program.subroutines[ line ];
+		
+		if( subroutine != null && !subroutineCache.isAbandoned( subroutine ) ) {
+			return call( subroutine, budget );
+		}
+		
+		execute();
+		
+		//The engine running the call's lines takes this as a yield and hands back to call
+		if( runningCall != null && runningCall.isReturn[ line ] && !halt ) {
+			isCallReturned = true;
+		}
+		
+		return 1;
+	}
+	
+	//Calls a pure subroutine starting on the line the program counter is on, taking no more than budget steps
+	//If it's been called with the same inputs before its outputs are set straight away, otherwise its lines are run by the engine
+	//until it returns and its outputs remembered
+	//Returns the number of steps taken
+	private long call( Subroutine subroutine, long budget ) {
+		
+		int[] inputs = new int[ subroutine.inputRegisters.length ];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[ i ] = registers[ subroutine.inputRegisters[ i ] ];
+		}
+		
+		int[] outputs = subroutineCache.get( subroutine, inputs );
+		
+		//Only results from calls that returned without trapping are remembered, so these are all in range
+		if( outputs != null ) {
+			for (int i = 0; i < outputs.length; i++) {
+				registers[ subroutine.outputRegisters[ i ] ] = outputs[ i ];
+			}
+			registers[ Registers.PC ] = program.getNextExecutableLine( registers[ subroutine.returnRegister ] );
+			return 1;
+		}
+		
+		//The entry is run here, since the engine would only call it again
+		boolean isReturn = subroutine.isReturn[ subroutine.entry ];
+		execute();
+		long steps = 1;
+		
+		//Calls made by this one are run the same way and put this one back when they're done
+		Subroutine caller = runningCall;
+		runningCall = subroutine;
+		
+		long limit = Math.min( budget, Config.subroutineStepLimit );
+		if( !halt && !isReturn ) {
+			steps += engine.run( this, limit - steps );
+		}
+		
+		runningCall = caller;
+		
+		if( halt ) {
+			return steps;
+		}
+		
+		if( isReturn || isCallReturned ) {
+			isCallReturned = false;
+			
+			outputs = new int[ subroutine.outputRegisters.length ];
+			for (int i = 0; i < outputs.length; i++) {
+				outputs[ i ] = registers[ subroutine.outputRegisters[ i ] ];
+			}
+			subroutineCache.put( subroutine, inputs, outputs );
+			return steps;
+		}
+		
+		//Anything else stopping the call part way leaves the machine where it got to, which is exactly where running it line by line would have
+		//The rest of it is run as ordinary lines and not remembered
+		if( steps < limit && hasNextLine() ) {
+			
+			//The engine running the call stopped early for a yield request and took it, so it's made again for the one that called it
+			isYieldRequested = true;
+			
+		}else if( steps >= Config.subroutineStepLimit ) {
+			
+			//Too long to be worth remembering
+			subroutineCache.abandon( subroutine );
+			
+		}
+		
+		return steps;
+	}
+
+	//Runs until the program ends or halts, until maxSteps steps have been taken or until a yield is requested
+	//Returns the number of steps taken
+	public long run( long maxSteps ) {
+
+		long steps = engine.run( this, maxSteps );
+
+		//Engines write their own copy of the program counter back once they stop
+		if( trap != null ) {
+			restoreProgramCounter();
+		}
+
+		return steps;
+	}
+	
+	//Asks the running engine to return as soon as it next closes a loop, safe from any thread
+	public void requestYield() {
+		isYieldRequested = true;
+	}
+	
+	//Returns whether a yield was requested and clears the request, only called by engines
+	//A call being run by the engine returning is taken the same way, but is left for call to clear
+	public boolean takeYieldRequest() {
+		if( isCallReturned ) {
+			return true;
+		}
+		if( isYieldRequested ) {
+			isYieldRequested = false;
+			return true;
+		}
+		return false;
+	}
+	
+	//Copies the current state for the UI
+	//Only memory written since the last snapshot is included, and only the part of the string buffer that changed
+	public MachineSnapshot snapshot() {
+		
+		//Collect the memory that was written since the last snapshot
+		int[] memoryAddresses = new int[ dirtyMemoryCount ];
+		int[] memoryValues = new int[ dirtyMemoryCount ];
+		for (int i = 0; i < dirtyMemoryCount; i++) {
+			int address = dirtyMemoryAddresses[ i ];
+			memoryAddresses[ i ] = address;
+			memoryValues[ i ] = mainMemory[ address ];
+			isMemoryAddressDirty[ address ] = false;
+		}
+		dirtyMemoryCount = 0;
+		
+		//Only copy the part of the string buffer that changed
+		int stringBufferStart = 0;
+		char[] stringBufferCopy = null;
+		if( stringBufferDirtyStart < stringBufferDirtyEnd ) {
+			stringBufferStart = stringBufferDirtyStart;
+			stringBufferCopy = Arrays.copyOfRange( stringBuffer, stringBufferDirtyStart, stringBufferDirtyEnd );
+			stringBufferDirtyStart = Integer.MAX_VALUE;
+			stringBufferDirtyEnd = 0;
+		}
+		
+		return new MachineSnapshot( registers.clone(), memoryAddresses, memoryValues, stringBufferStart, stringBufferCopy );
+		
+	}
+	
+	/*
+	 * Opcode methods
+	 */
+
+	//Performs the MOV command
+	public void MOV( Instruction instruction ) {
+
+		//Get A's value
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+
+		//Special case for modifying PC
+		//If we wrote to PC, move on to the next executable line after the one written
+		if( instruction.destination == Registers.PC ) {
+			setRegisterValue( Registers.PC, program.getNextExecutableLine( valueA ) );
+			return;
+		}
+
+		//Store AValue in register B
+		setRegisterValue( instruction.destination, valueA );
+
+	}
+	
+	//Performs the addition operation
+	public void ADD( Instruction instruction ) {
+
+		//Values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+
+		//Do the addition
+		int result = valueA + valueB;
+
+		//Store the outcome
+		setRegisterValue( instruction.destination, result );
+
+	}
+	
+	//Performs the subtraction operation
+	public void SUB( Instruction instruction ) {
+
+		//Values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+
+		//Do the subtraction
+		int result = valueA - valueB;
+
+		//Store the outcome
+		setRegisterValue( instruction.destination, result );
+
+	}
+	
+	/*
+	 * Branching
+	 */
+	
+	//Branch not equal
+	public void BNE( Instruction instruction ) {
+		
+		//Get values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+		
+		//Check if they're not equal
+		if( valueA != valueB ) {
+			//Branch to the next executable command after the label
+			setRegisterValue( Registers.PC, instruction.target );
+		}
+		
+	}
+	
+	//Branch equal
+	public void BEQ( Instruction instruction ) {
+
+		//Get values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+
+		//Check if they're equal
+		if( valueA == valueB ) {
+			//Branch to the next executable command after the label
+			setRegisterValue( Registers.PC, instruction.target );
+		}
+	}
+	
+	//Branch greater than
+	public void BGT( Instruction instruction ) {
+
+		//Get values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+
+		//Check if A is greater
+		if( valueA > valueB ) {
+			//Branch to the next executable command after the label
+			setRegisterValue( Registers.PC, instruction.target );
+		}
+
+	}
+	
+	//Branch less than
+	public void BLT( Instruction instruction ) {
+
+		//Get values of A and B
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+
+		//Check if A is less
+		if( valueA < valueB ) {
+			//Branch to the next executable command after the label
+			setRegisterValue( Registers.PC, instruction.target );
+		}
+
+	}
+	
+	//Jump to label
+	public void BR( Instruction instruction ) {
+		
+		//Branch to the next executable command after the label
+		setRegisterValue( Registers.PC, instruction.target );
+		
+	}
+	
+	//Load from main memory
+	public void LOAD( Instruction instruction ) {
+		
+		//Get what's in memory at MH, which is always a valid address
+		int mainMemoryValue = mainMemory[ getRegisterValue( Registers.MH ) ];
+		
+		//Load it into register A
+		setRegisterValue( instruction.destination, mainMemoryValue );
+		
+	}
+	
+	//Store into main memory
+	public void STORE( Instruction instruction ) {
+		
+		//Get A's value
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		
+		//Save it into main memory at MH, which is always a valid address
+		writeMainMemory( getRegisterValue( Registers.MH ), valueA );
+		
+	}
+	
+	/*
+	 * String buffer
+	 */
+	
+	//Appends a character to the string buffer
+	public void APND( Instruction instruction ) {
+		
+		//Get A's value
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		
+		//Write to the buffer
+		writeToStringBuffer( valueA );
+		
+ 	}
+	
+	//Clears the string buffer
+	public void DUMP() {
+		clearStringBuffer();
+	}
+	
+	//Flushes the string buffer to the console
+	//The output reads straight out of the buffer before it's cleared
+	public void PRNT() {
+		if( output != null ) {
+			output.print( viewStringBuffer() );
+		}
+		clearStringBuffer();
+	}
+	
+	//Clears the console
+	public void CLR() {
+		if( output != null ) {
+			output.clearConsole();
+		}
+	}
+	
+	//Performs an arithmetic shift left of A by B amount and stores it in register C
+	public void ASL( Instruction instruction ) {
+		
+		//Get A and B values
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+		
+		//Shift A by amount B
+		int output = valueA << valueB;
+		
+		//Store the output in register C
+		setRegisterValue( instruction.destination, output );
+		
+	}
+	
+	//Performs an arithmetic shift right of A by B amount and stores it in register C
+	public void ASR( Instruction instruction ) {
+		
+		//Get A and B values
+		int valueA = getArgumentValue( instruction.aRegister, instruction.aValue );
+		int valueB = getArgumentValue( instruction.bRegister, instruction.bValue );
+		
+		//Shift A by amount B
+		int output = valueA >> valueB;
+		
+		//Store the output in register C
+		setRegisterValue( instruction.destination, output );
+		
+	}
+}
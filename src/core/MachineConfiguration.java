@@ -0,0 +1,57 @@
+package core;
+import misc.Config;
+
+//How an Engine assembles its program and sets up the machine that runs it
+//Everything starts out as it is in Config, so only what's different needs setting
+public class MachineConfiguration {
+
+	//What runs the program when more than a single step is taken
+	public EngineType engineType = EngineType.fromName( Config.engine );
+
+	//Whether the program is run through the Optimizer before it runs
+	public boolean optimize = Config.optimize;
+
+	//Whether calls to pure subroutines are remembered
+	public boolean memoizeSubroutines = Config.memoizeSubroutines;
+
+	//The range of numbers the machine can use
+	public int minNumberRange = Config.minNumberRange;
+	public int maxNumberRange = Config.maxNumberRange;
+
+	//The number of non-special registers
+	public int registerCount = Config.registerCount;
+
+	//The size of main memory
+	public int mainMemoryLength = Config.mainMemoryLength;
+
+	//How many characters the string buffer holds
+	public int stringBufferSize = Config.stringBufferSize;
+
+	//Returns how many slots the register file has, special registers included
+	public int getRegisterSlots() {
+		return Registers.FIRST_REGULAR + registerCount;
+	}
+
+	//Returns whether a program assembled with another configuration can run on a machine set up with this one
+	//Everything the Verifier and the analyses prove depends on the machine being the same shape
+	public boolean hasSameMachine( MachineConfiguration other ) {
+		return minNumberRange == other.minNumberRange && maxNumberRange == other.maxNumberRange
+				&& registerCount == other.registerCount && mainMemoryLength == other.mainMemoryLength
+				&& stringBufferSize == other.stringBufferSize;
+	}
+
+	//Returns a copy, so changing one doesn't change what anything already set up with the other runs with
+	public MachineConfiguration copy() {
+		MachineConfiguration copy = new MachineConfiguration();
+		copy.engineType = engineType;
+		copy.optimize = optimize;
+		copy.memoizeSubroutines = memoizeSubroutines;
+		copy.minNumberRange = minNumberRange;
+		copy.maxNumberRange = maxNumberRange;
+		copy.registerCount = registerCount;
+		copy.mainMemoryLength = mainMemoryLength;
+		copy.stringBufferSize = stringBufferSize;
+		return copy;
+	}
+
+}
@@ -0,0 +1,16 @@
+package core;
+
+//Where a Machine sends everything it prints
+public interface MachineOutput {
+
+	//Prints a line of text, used by PRNT
+	//PRNT hands over a view of the string buffer that is only valid until this returns, so copy it to keep it
+	public void print( CharSequence text );
+
+	//Reports a halting error found while running the given line
+	public void error( int line, String str );
+
+	//Clears everything printed so far, used by CLR
+	public void clearConsole();
+
+}
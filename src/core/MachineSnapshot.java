@@ -0,0 +1,27 @@
+package core;
+
+//A copy of the machine's state at one moment, handed to the UI so it never reads state that is still changing
+public class MachineSnapshot {
+
+	//Every register, laid out as described in Registers
+	//The program counter gives the current line and MH gives the highlighted memory address
+	public final int[] registers;
+
+	//The main memory addresses written since the last snapshot and their new values
+	public final int[] memoryAddresses;
+	public final int[] memoryValues;
+
+	//The characters of the string buffer that changed since the last snapshot, starting at stringBufferStart
+	//Empty slots are 0, and it's null if nothing changed
+	public final int stringBufferStart;
+	public final char[] stringBuffer;
+
+	public MachineSnapshot( int[] registers, int[] memoryAddresses, int[] memoryValues, int stringBufferStart, char[] stringBuffer ) {
+		this.registers = registers;
+		this.memoryAddresses = memoryAddresses;
+		this.memoryValues = memoryValues;
+		this.stringBufferStart = stringBufferStart;
+		this.stringBuffer = stringBuffer;
+	}
+
+}
@@ -15,33 +15,41 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
 import javax.swing.JToolBar;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
 
+import misc.Colors;
 import misc.Config;
+import misc.ConsoleBuffer;
+import misc.MemoryStrip;
+import misc.Strings;
 import misc.TextLineNumber;
 import misc.UpperCaseDocument;
 
@@ -58,17 +66,8 @@ public class MainWindow extends JFrame{
 	//The highlight of the last line executed.  We need this to remove that highlight
 	Object previousLineHighlighter;
 	
-	//The currently highlighted memory address.  We need this to remove that highlight
-	JLabel previousMemoryAddress;
-
-	//Stores the labels associated with the registers
-	Map<String, JLabel> registerLabels = new HashMap<String, JLabel>();
-	
-	//Stores the labels associated with main memory
-	JLabel[]  mainMemoryLabels = new JLabel[ Config.mainMemoryLength ];
-
-	//Stores the labels associated with the string buffer
-	JLabel[]  stringBufferLabels = new JLabel[ Config.stringBufferSize ];
+	//Stores the labels associated with the registers, by register slot
+	JLabel[] registerLabels;
 	
 	//Keeps track of whether or not the file has been changed
 	boolean fileHasChanged = false;
@@ -92,6 +91,10 @@ public class MainWindow extends JFrame{
 	JButton stepButton;
 	JButton fastForwardButton;
 	JButton runStopButton;
+	
+	//Fast forward speed controls
+	JSpinner stepsPerSecondSpinner;
+	JCheckBox turboCheckBox;
 
 	//Button icons
 	ImageIcon runIcon;
@@ -101,20 +104,23 @@ public class MainWindow extends JFrame{
 	JTextArea codeTextArea;
 	JTextArea consoleTextArea;
 
+	//The console's lines, printed to from any thread and shown in the console text area once per refresh
+	ConsoleBuffer consoleBuffer = new ConsoleBuffer( Config.consoleLineLimit );
+
 	//Code line counter
 	TextLineNumber codeLineNumber;
 
 	//Panel of registers
 	JPanel registersPanel;
 	
-	//Panel for main memory
-	JPanel mainMemoryPanel;
+	//Main memory, only the visible addresses are ever drawn
+	MemoryStrip mainMemoryStrip;
 	
 	//Main memory scroll bar
 	JScrollPane mainMemoryPanelScrollPane;
 	
-	//Panel for the string buffer
-	JPanel stringBufferPanel;
+	//The string buffer, drawn the same way as main memory with each value shown as its character
+	MemoryStrip stringBufferStrip;
 	
 	//String buffer scroll bar
 	JScrollPane stringBufferPanelScrollPane;
@@ -122,13 +128,10 @@ public class MainWindow extends JFrame{
 	//A reference to the processing logic
 	private ProcessingLogic logic;
 	
-	//The thread we'll use while fast forwarding
-	Thread fastForwardThread;
-	
-	public void start(){
+	public void start( ProcessingLogic logic ){
 
-		//Get the processing logic reference
-		logic = primary.processingLogic;
+		//Keep the processing logic reference
+		this.logic = logic;
 		
 		//Font
 		Charset.forName( "UTF-8" );
@@ -189,6 +192,7 @@ public class MainWindow extends JFrame{
 				}
 
 				//Having dealt with that, exit the program
+				consoleBuffer.closeTee();
 				System.exit( 1 );
 
 			}
@@ -293,21 +297,14 @@ public class MainWindow extends JFrame{
 		registersPanel = new JPanel();
 		registersPanel.setLayout( new BoxLayout( registersPanel, BoxLayout.X_AXIS ) );
 
-		//Add special registers
-		//Program counter
-		addRegister( "PC", 0 );
-		
-		//Memory read/write head
-		addRegister( "MH", 0 );
-		
-		int specialRegisterCount = registersPanel.getComponentCount();
-		
-		//Add regular registers
-		for (int i = 0; i < Config.registerCount; i++) {
-			addRegister( "R" + i, 0 );
+		//Add every register, special registers first
+		int registerSlots = logic.getConfiguration().getRegisterSlots();
+		registerLabels = new JLabel[ registerSlots ];
+		for (int i = 0; i < registerSlots; i++) {
+			addRegister( i, 0 );
 		}
 		
-		registersPanel.setPreferredSize( new Dimension( 50 * ( Config.registerCount + specialRegisterCount ), 50 ) );
+		registersPanel.setPreferredSize( new Dimension( 50 * registerSlots, 50 ) );
 
 		//Registers scroll pane
 		JScrollPane registersPanelScrollPane = new JScrollPane( registersPanel );
@@ -319,17 +316,10 @@ public class MainWindow extends JFrame{
 		
 		
 		//Main memory
-		mainMemoryPanel = new JPanel();
-		mainMemoryPanel.setLayout( new BoxLayout( mainMemoryPanel, BoxLayout.X_AXIS ) );
-		mainMemoryPanel.setPreferredSize( new Dimension( Config.mainMemoryLength * 75, 50 ) );
-		
-		//Add memory spaces
-		for (int i = 0; i < Config.mainMemoryLength; i++) {
-			addMainMemorySpace( i, 0 );
-		}
+		mainMemoryStrip = new MemoryStrip( logic.getConfiguration().mainMemoryLength, "M", font );
 
 		//Main memory scroll pane
-		mainMemoryPanelScrollPane = new JScrollPane( mainMemoryPanel );
+		mainMemoryPanelScrollPane = new JScrollPane( mainMemoryStrip );
 		mainMemoryPanelScrollPane.setMinimumSize( new Dimension( Integer.MAX_VALUE, 75 ) );
 		mainMemoryPanelScrollPane.setMaximumSize( new Dimension( Integer.MAX_VALUE, 75 ) );
 		mainMemoryPanelScrollPane.setPreferredSize( new Dimension( Integer.MAX_VALUE, 75 ) );
@@ -337,17 +327,21 @@ public class MainWindow extends JFrame{
 		mainMemoryPanelScrollPane.getHorizontalScrollBar().setUnitIncrement( 16 );
 		
 		//String buffer
-		stringBufferPanel = new JPanel();
-		stringBufferPanel.setLayout( new BoxLayout( stringBufferPanel, BoxLayout.X_AXIS ) );
-		stringBufferPanel.setPreferredSize( new Dimension( Config.stringBufferSize * 50, 50 ) );
-		
-		//Add buffer spaces
-		for (int i = 0; i < Config.stringBufferSize; i++) {
-			addStringBufferCharacter( i, "" );
-		}
+		stringBufferStrip = new MemoryStrip( logic.getConfiguration().stringBufferSize, "", font, 50, "W" ) {
+
+			private static final long serialVersionUID = 1L;
+
+			//Empty slots are 0 and show nothing
+			@Override
+			protected String getCellText( int index ) {
+				int value = getValue( index );
+				return value == 0 ? "" : String.valueOf( (char) value );
+			}
+
+		};
 
 		//String buffer scroll pane
-		stringBufferPanelScrollPane = new JScrollPane( stringBufferPanel );
+		stringBufferPanelScrollPane = new JScrollPane( stringBufferStrip );
 		stringBufferPanelScrollPane.setMinimumSize( new Dimension( Integer.MAX_VALUE, 75 ) );
 		stringBufferPanelScrollPane.setMaximumSize( new Dimension( Integer.MAX_VALUE, 75 ) );
 		stringBufferPanelScrollPane.setPreferredSize( new Dimension( Integer.MAX_VALUE, 75 ) );
@@ -363,6 +357,26 @@ public class MainWindow extends JFrame{
 		//Console scroll pane
 		JScrollPane consoleScrollPane = new JScrollPane( consoleTextArea );
 
+		//Show what's been printed at most once per refresh, however fast it's printed
+		Timer consoleTimer = new Timer( 1000 / Config.uiRefreshRate, new ActionListener() {
+
+			@Override
+			public void actionPerformed( ActionEvent e ) {
+				flushConsole();
+			}
+
+		});
+		consoleTimer.start();
+
+		//Copy the console to a file if asked to
+		if( Config.consoleFile != null ) {
+			try {
+				consoleBuffer.teeTo( Paths.get( Config.consoleFile ) );
+			} catch ( IOException e ) {
+				print( Strings.ConsoleFileFailed + e.getMessage() );
+			}
+		}
+
 		//Panel for the console and registers
 		JPanel bottomPanel = new JPanel();
 		bottomPanel.setLayout( new BoxLayout( bottomPanel, BoxLayout.Y_AXIS ) );
@@ -501,8 +515,11 @@ public class MainWindow extends JFrame{
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
 
-				fastForwardThread = new Thread( logic );
-				fastForwardThread.start();
+				//Sending a step while fast forwarding would stop it
+				stepButton.setEnabled( false );
+				fastForwardButton.setEnabled( false );
+
+				logic.fastForward( turboCheckBox.isSelected() );
 
 			}
 
@@ -522,14 +539,8 @@ public class MainWindow extends JFrame{
 				//If we're running, stop execution and switch to editing mode
 				if( isRunning ) {
 
-					//Stop the fast forward thread if it's running
-					if( fastForwardThread != null ) {
-						if( fastForwardThread.isAlive() ) {
-							logic.halt = true;
-						}
-					}
-					
-					
+					//Stop fast forwarding and anything else waiting to run
+					logic.stop();
 					
 					switchToEditMode();
 
@@ -545,6 +556,32 @@ public class MainWindow extends JFrame{
 		});
 
 
+		//Fast forward speed
+		stepsPerSecondSpinner = new JSpinner( new SpinnerNumberModel( Config.stepsPerSecond, 1, 1000, 1 ) );
+		stepsPerSecondSpinner.setMaximumSize( new Dimension( 75, 30 ) );
+		stepsPerSecondSpinner.setToolTipText( "Steps per second while fast forwarding" );
+		stepsPerSecondSpinner.addChangeListener( new ChangeListener() {
+
+			@Override
+			public void stateChanged(ChangeEvent arg0) {
+				Config.stepsPerSecond = (Integer) stepsPerSecondSpinner.getValue();
+			}
+
+		});
+
+		//Turbo mode
+		turboCheckBox = new JCheckBox( "Turbo" );
+		turboCheckBox.setFocusable( false );
+		turboCheckBox.setToolTipText( "Fast forward at full speed, refreshing the display " + Config.uiRefreshRate + " times a second" );
+		turboCheckBox.addActionListener( new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				stepsPerSecondSpinner.setEnabled( !turboCheckBox.isSelected() );
+			}
+
+		});
+
 		//Toolbar
 		JToolBar toolbar = new JToolBar();
 		toolbar.setFloatable( false );
@@ -558,6 +595,12 @@ public class MainWindow extends JFrame{
 		toolbar.add( runStopButton );
 		toolbar.add( stepButton );
 		toolbar.add( fastForwardButton );
+		
+		toolbar.addSeparator();
+		
+		toolbar.add( new JLabel( "Steps/s " ) );
+		toolbar.add( stepsPerSecondSpinner );
+		toolbar.add( turboCheckBox );
 
 		this.add( toolbar, BorderLayout.NORTH );
 
@@ -568,31 +611,37 @@ public class MainWindow extends JFrame{
 
 	}
 
-	//Prints a string to the console
+	//Prints a line to the console
+	//Safe to call from any thread, it shows up the next time the console is flushed
+	//PRNT output has already been trimmed by the machine
 	public void print( String str ) {
-		str = str.trim();
-		
-		consoleTextArea.append( str + "\n" );
+		consoleBuffer.append( str );
 	}
 
 	//Prints an error to the console
-	public void error( String str ) {
-
-		//Print the error
-		print( "Line #" + logic.lastLine + ": " + str );
-
-		//Halt
-		switchToEditMode();
+	//Safe to call from any thread, stopping is up to the caller
+	public void error( int line, String str ) {
+		print( "Line #" + line + ": " + str );
 	}
 
 	//Clears out the console
+	//Safe to call from any thread
 	public void clearConsole() {
-		consoleTextArea.setText( "" );
+		consoleBuffer.clear();
+	}
+
+	//Shows everything printed since the last flush in the console
+	public void flushConsole() {
+		consoleBuffer.flushTo( consoleTextArea );
 	}
 
 	//Disable edit items items and enable execution items
 	public void switchToEditMode() {
 		
+		//Show everything the program printed and make sure it's in the console file too
+		flushConsole();
+		consoleBuffer.flushTee();
+		
 		//Enable editing items
 		saveButton.setEnabled( true );
 		newButton.setEnabled( true );
@@ -654,16 +703,13 @@ public class MainWindow extends JFrame{
 		//Clear the console
 		clearConsole();
 		
-		//Reset the logic
+		//Reset the logic and assemble the code
 		logic.getReadyToRun();
-		
-		//Preprocess the code
-		logic.preprocess();
 
 	}
 
 	//Adds a register to the system
-	public void addRegister( String name, int value ) {
+	public void addRegister( int index, int value ) {
 		//The panel to contain the register
 		JPanel register = new JPanel();
 		register.setLayout( new BorderLayout() );
@@ -674,7 +720,7 @@ public class MainWindow extends JFrame{
 		register.setBorder( BorderFactory.createLineBorder( Color.black ) );
 
 		//The label to hold the register name
-		JLabel topLabel = new JLabel( name );
+		JLabel topLabel = new JLabel( Registers.getName( index ) );
 		topLabel.setHorizontalAlignment( JLabel.CENTER );
 		topLabel.setFont( font );
 		register.add( topLabel, BorderLayout.NORTH );
@@ -685,118 +731,70 @@ public class MainWindow extends JFrame{
 		bottomLabel.setFont( font );
 		register.add( bottomLabel, BorderLayout.SOUTH );
 		
-		//Add the bottom register to the registerLabels map so it can be edited later
-		registerLabels.put( name, bottomLabel );
+		//Add the bottom register to the registerLabels array so it can be edited later
+		registerLabels[ index ] = bottomLabel;
 
 		//Add this register to the list
 		registersPanel.add( register );
-		
-		//Initialize this register in logic as well
-		logic.addRegister( name, value );
-	}
-	
-	//Adds a memory space to the UI
-	public void addMainMemorySpace( int key, int value ) {
-		//The panel to contain the memory space
-		JPanel mainMemorySpace = new JPanel();
-		mainMemorySpace.setLayout( new BorderLayout() );
-		mainMemorySpace.setMinimumSize( new Dimension( 50, -1 ) );
-		mainMemorySpace.setPreferredSize( new Dimension( 50, -1 ) );
-
-		//Add a border
-		mainMemorySpace.setBorder( BorderFactory.createLineBorder( Color.black ) );
-
-		//The label to hold the memory space name
-		JLabel topLabel = new JLabel( "M" + key );
-		topLabel.setHorizontalAlignment( JLabel.CENTER );
-		topLabel.setFont( font );
-		mainMemorySpace.add( topLabel, BorderLayout.NORTH );
-
-		//The label to hold the register value
-		JLabel bottomLabel = new JLabel( String.valueOf( value ) );
-		bottomLabel.setHorizontalAlignment( JLabel.CENTER );
-		bottomLabel.setFont( font );
-		mainMemorySpace.add( bottomLabel, BorderLayout.SOUTH );
-		
-		//Add the bottom label to the mainMemoryLabels array so it can be edited later
-		mainMemoryLabels[ key ] = bottomLabel;
-
-		//Add this memory space to the list
-		mainMemoryPanel.add( mainMemorySpace );
-	}
-	
-	public void addStringBufferCharacter( int key, String value ) {
-		
-		//The panel to contain the string buffer character
-		JPanel stringBufferCharacter = new JPanel();
-		stringBufferCharacter.setLayout( new BorderLayout() );
-		stringBufferCharacter.setMinimumSize( new Dimension( 50, -1 ) );
-		stringBufferCharacter.setPreferredSize( new Dimension( 50, -1 ) );
-
-		//Add a border
-		stringBufferCharacter.setBorder( BorderFactory.createLineBorder( Color.black ) );
-
-		//The label to hold the character index
-		JLabel topLabel = new JLabel( String.valueOf( key ) );
-		topLabel.setHorizontalAlignment( JLabel.CENTER );
-		topLabel.setFont( font );
-		stringBufferCharacter.add( topLabel, BorderLayout.NORTH );
-
-		//The label to hold the character string
-		JLabel bottomLabel = new JLabel( String.valueOf( value ) );
-		bottomLabel.setHorizontalAlignment( JLabel.CENTER );
-		bottomLabel.setFont( font );
-		stringBufferCharacter.add( bottomLabel, BorderLayout.SOUTH );
-		
-		//Add the bottom label to the string buffer array so it can be edited later
-		stringBufferLabels[ key ] = bottomLabel;
-
-		//Add this memory space to the list
-		stringBufferPanel.add( stringBufferCharacter );
 	}
 	
 	//This highlights a memory address as being the currently selected one
 	public void highlightMemoryAddress( int address ) {
 		
-		//Unhighlight the previous memory address if there is one
-		if( previousMemoryAddress != null ) {
-			( (JPanel) previousMemoryAddress.getParent() ).setBorder( BorderFactory.createLineBorder( Color.black ) );
-		}	
+		//Highlight the new address, which unhighlights the previous one
+		mainMemoryStrip.highlightCell( address );
 		
-		//Highlight the new address
-		( (JPanel) mainMemoryLabels[ address ].getParent() ).setBorder( BorderFactory.createLineBorder( Config.highlightedMemoryAddressColor, 3 ) );
+		//Scroll to the newly highlighted address
+		mainMemoryStrip.scrollToCell( address );
 		
-		//Save the new address as the previous memory address
-		previousMemoryAddress = mainMemoryLabels[ address ];
+	}
+	
+	//Shows a snapshot of the machine's state
+	public void showSnapshot( MachineSnapshot snapshot ) {
 		
-		//Scroll to the newly highlighted address
-		JScrollBar bar = mainMemoryPanelScrollPane.getHorizontalScrollBar();
+		//Registers
+		for (int i = 0; i < snapshot.registers.length; i++) {
+			setRegisterValue( i, snapshot.registers[ i ] );
+		}
 		
-		//Calculate our address percentage
-		float addressPercent = ( (float) address / (float) Config.mainMemoryLength );
+		//Only the memory that changed
+		for (int i = 0; i < snapshot.memoryAddresses.length; i++) {
+			setMainMemoryValue( snapshot.memoryAddresses[ i ], snapshot.memoryValues[ i ] );
+		}
 		
-		//Calculate the bar value to match our address percentage
-		float barValue = addressPercent * (float) bar.getMaximum();
+		//Only the part of the string buffer that changed
+		if( snapshot.stringBuffer != null ) {
+			for (int i = 0; i < snapshot.stringBuffer.length; i++) {
+				setStringBufferValue( snapshot.stringBufferStart + i, snapshot.stringBuffer[ i ] );
+			}
+		}
 		
-		//Set our bar value to that
-		bar.setValue( (int) barValue );
+		//Highlight the memory head if it's in bounds, processing logic reports it if it's not
+		int memoryHead = snapshot.registers[ Registers.MH ];
+		if( memoryHead >= 0 && memoryHead < logic.getConfiguration().mainMemoryLength ) {
+			highlightMemoryAddress( memoryHead );
+		}
 		
+		//Highlight the line that runs next, unless it finished while this was on its way
+		if( isRunning ) {
+			highlightLine( snapshot.registers[ Registers.PC ] );
+		}
 		
 	}
 	
 	//Change the text of a register label
-	public void setRegisterValue( String name, int value ) {
-		registerLabels.get( name ).setText( String.valueOf( value ) );
+	public void setRegisterValue( int index, int value ) {
+		registerLabels[ index ].setText( String.valueOf( value ) );
 	}
 	
 	//Change the text of a memory label
 	public void setMainMemoryValue( int address, int value ) {
-		mainMemoryLabels[ address ].setText( String.valueOf( value ) );
+		mainMemoryStrip.setValue( address, value );
 	}
 	
-	//Change the text of a string buffer label
-	public void setStringBufferValue( int address, String value ) {
-		stringBufferLabels[ address ].setText( value );
+	//Change the character in a string buffer slot, 0 empties it
+	public void setStringBufferValue( int address, char value ) {
+		stringBufferStrip.setValue( address, value );
 	}
 	
 	//Returns whether or not a file is open
@@ -975,7 +973,7 @@ public class MainWindow extends JFrame{
 		try {
 			int lineStart = codeTextArea.getLineStartOffset( lineNumber );
 			int lineEnd = codeTextArea.getLineEndOffset( lineNumber );
-			previousLineHighlighter = codeTextArea.getHighlighter().addHighlight( lineStart, lineEnd, new DefaultHighlighter.DefaultHighlightPainter( Config.highlightedColor ) );
+			previousLineHighlighter = codeTextArea.getHighlighter().addHighlight( lineStart, lineEnd, new DefaultHighlighter.DefaultHighlightPainter( Colors.highlightedColor ) );
 		} catch (BadLocationException e) {
 			
 			//If this line doesn't exist, don't even try to highlight it as we have other methods to deal with these errors internally
@@ -985,6 +983,11 @@ public class MainWindow extends JFrame{
 		
 	}
 	
+	//Returns the text of every line
+	public String[] getLines() {
+		return codeTextArea.getText().split( "\n", -1 );
+	}
+	
 	//Returns the text from a given line
 	public String getLine( int lineNumber ) {
 		
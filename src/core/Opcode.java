@@ -0,0 +1,61 @@
+package core;
+import java.util.HashMap;
+import java.util.Map;
+
+public enum Opcode {
+
+	//Data movement
+	MOV( 2 ),
+	LOAD( 1 ),
+	STORE( 1 ),
+
+	//Arithmetic
+	ADD( 3 ),
+	SUB( 3 ),
+	ASL( 3 ),
+	ASR( 3 ),
+
+	//Branching
+	BNE( 3 ),
+	BEQ( 3 ),
+	BGT( 3 ),
+	BLT( 3 ),
+	BR( 1 ),
+
+	//String buffer and console
+	APND( 1 ),
+	DUMP( 0 ),
+	PRNT( 0 ),
+	CLR( 0 ),
+
+	//A line that can't be executed, either because it failed to decode or because it isn't code at all
+	//Running one of these reports the error it was decoded with
+	INVALID( 0 );
+
+	//The number of arguments this opcode expects after its name
+	public final int argumentCount;
+
+	private Opcode( int argumentCount ) {
+		this.argumentCount = argumentCount;
+	}
+
+	//Returns the opcode with the given name or null if there isn't one
+	public static Opcode fromName( String name ) {
+		return names.get( name );
+	}
+
+	//Opcodes by the name they are written with in code
+	private static final Map<String, Opcode> names = new HashMap<String, Opcode>();
+
+	static {
+		for( Opcode opcode : values() ) {
+
+			//INVALID is internal and can't be written in code
+			if( opcode != INVALID ) {
+				names.put( opcode.name(), opcode );
+			}
+
+		}
+	}
+
+}
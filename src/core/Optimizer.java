@@ -0,0 +1,220 @@
+package core;
+
+//Rewrites a verified program so it does the same thing in fewer steps, only used when Config.optimize is on
+//Every instruction stays on the line it was written on, so errors, the highlighted line and single steps all still
+//refer to the source as it was written, only the way the program moves between lines changes
+//
+//Arithmetic on two literals becomes a MOV of the result, as long as the result doesn't trap
+//A MOV of a register into itself is removed
+//Branches, and instructions moving on to the next line, go straight past a BR they would land on
+//Lines that can never be reached are removed, unless the program writes PC and so could land anywhere
+//Removed lines are skipped over the same way comments are, but still run if PC is written with their exact line
+public class Optimizer {
+
+	//Optimizes a program in place
+	public static void optimize( Program program ) {
+
+		Instruction[] instructions = program.instructions;
+		int lineCount = instructions.length;
+		boolean[] isRemoved = new boolean[ lineCount ];
+
+		//Fold constants and find the instructions that do nothing
+		for (int line = 0; line < lineCount; line++) {
+
+			if( !program.isExecutable( line ) ) {
+				continue;
+			}
+
+			instructions[ line ] = fold( instructions[ line ], program.configuration );
+
+			if( isMoveToItself( instructions[ line ] ) ) {
+				isRemoved[ line ] = true;
+			}
+
+		}
+
+		//The first line is always kept, since a program with no lines left would be reported as empty instead of run
+		int firstLine = program.getFirstExecutableLine();
+		if( firstLine < lineCount ) {
+			isRemoved[ firstLine ] = false;
+		}
+
+		//Send every way out of a line past anything that's been removed and any BR it lands on
+		for (int line = 0; line < lineCount; line++) {
+
+			Instruction instruction = instructions[ line ];
+			if( instruction.opcode == Opcode.INVALID ) {
+				continue;
+			}
+
+			int next = thread( instructions, isRemoved, instruction.next );
+
+			//Moving on to the next line can only ever go forwards, since that's where engines expect no loop to close
+			if( next <= line ) {
+				next = skipRemoved( instructions, isRemoved, instruction.next );
+			}
+
+			int target = instruction.target;
+			if( isBranch( instruction.opcode ) ) {
+				target = thread( instructions, isRemoved, target );
+			}
+
+			if( next != instruction.next || target != instruction.target ) {
+				instructions[ line ] = new Instruction(
+						instruction.opcode, instruction.line, next,
+						instruction.aRegister, instruction.aValue,
+						instruction.bRegister, instruction.bValue,
+						instruction.destination, target, instruction.error
+						);
+			}
+
+		}
+
+		//Anything that can't be reached from the first line is never run, unless PC is written
+		if( !writesProgramCounter( program ) ) {
+
+			boolean[] isReached = findReachableLines( program, isRemoved );
+
+			for (int line = 0; line < lineCount; line++) {
+				if( !isReached[ line ] ) {
+					isRemoved[ line ] = true;
+				}
+			}
+
+		}
+
+		program.removeLines( isRemoved );
+	}
+
+	//Returns an instruction with its arithmetic done ahead of time if both its arguments are literals
+	//Anything that would trap, or that writes PC, is left alone
+	private static Instruction fold( Instruction instruction, MachineConfiguration configuration ) {
+
+		if( instruction.aRegister != Instruction.LITERAL || instruction.bRegister != Instruction.LITERAL || instruction.destination == Registers.PC ) {
+			return instruction;
+		}
+
+		int a = instruction.aValue;
+		int b = instruction.bValue;
+		int result;
+
+		switch( instruction.opcode ) {
+		case ADD:
+			result = a + b;
+			break;
+		case SUB:
+			result = a - b;
+			break;
+		case ASL:
+			result = a << b;
+			break;
+		case ASR:
+			result = a >> b;
+			break;
+		default:
+			return instruction;
+		}
+
+		if( result > configuration.maxNumberRange || result < configuration.minNumberRange ) {
+			return instruction;
+		}
+
+		return new Instruction(
+				Opcode.MOV, instruction.line, instruction.next,
+				Instruction.LITERAL, result, Instruction.LITERAL, 0,
+				instruction.destination, instruction.target, null
+				);
+	}
+
+	//Returns whether an instruction moves a register into itself, which does nothing
+	private static boolean isMoveToItself( Instruction instruction ) {
+		return instruction.opcode == Opcode.MOV && instruction.aRegister != Instruction.LITERAL && instruction.aRegister == instruction.destination;
+	}
+
+	//Returns the line running really carries on from when arriving at a line, past removed lines and any BR
+	//A loop made only of BRs is followed around once and then left as it is
+	private static int thread( Instruction[] instructions, boolean[] isRemoved, int line ) {
+
+		for (int hops = 0; hops < instructions.length && line < instructions.length; hops++) {
+
+			if( isRemoved[ line ] ) {
+				line = instructions[ line ].next;
+			}else if( instructions[ line ].opcode == Opcode.BR ) {
+				line = instructions[ line ].target;
+			}else {
+				break;
+			}
+
+		}
+
+		return line;
+	}
+
+	//Returns the first line at or after a line that hasn't been removed
+	private static int skipRemoved( Instruction[] instructions, boolean[] isRemoved, int line ) {
+		while( line < instructions.length && isRemoved[ line ] ) {
+			line = instructions[ line ].next;
+		}
+		return line;
+	}
+
+	//Returns whether an opcode is a branch
+	private static boolean isBranch( Opcode opcode ) {
+		switch( opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+		case BR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	//Returns whether anything in the program writes PC
+	private static boolean writesProgramCounter( Program program ) {
+		for (int line = 0; line < program.getLineCount(); line++) {
+			if( program.isExecutable( line ) && program.instructions[ line ].destination == Registers.PC ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Returns which lines can be reached from the first line by moving on or branching
+	private static boolean[] findReachableLines( Program program, boolean[] isRemoved ) {
+
+		Instruction[] instructions = program.instructions;
+		boolean[] isReached = new boolean[ instructions.length ];
+
+		//Every line reached adds at most two more
+		int[] stack = new int[ 2 * instructions.length + 1 ];
+		int stackSize = 0;
+
+		stack[ stackSize++ ] = skipRemoved( instructions, isRemoved, program.getFirstExecutableLine() );
+
+		while( stackSize > 0 ) {
+
+			int line = stack[ --stackSize ];
+			if( line >= instructions.length || isReached[ line ] ) {
+				continue;
+			}
+			isReached[ line ] = true;
+
+			Instruction instruction = instructions[ line ];
+
+			//BR is the only instruction that never moves on to its next line
+			if( instruction.opcode != Opcode.BR ) {
+				stack[ stackSize++ ] = instruction.next;
+			}
+			if( isBranch( instruction.opcode ) ) {
+				stack[ stackSize++ ] = instruction.target;
+			}
+
+		}
+
+		return isReached;
+	}
+
+}
@@ -0,0 +1,128 @@
+package core;
+import java.util.List;
+import java.util.Map;
+
+import misc.Strings;
+
+//An assembled program
+//Instructions are indexed by line so the program counter can be used to look them up directly
+public class Program {
+
+	//Decoded instructions, one per line of code
+	//Lines that aren't executable hold an INVALID instruction so jumping onto them still reports an error
+	public final Instruction[] instructions;
+
+	//The first executable line after every line
+	//Offset by one so that line -1, the line before the start of the program, can be looked up too
+	private final int[] nextExecutableLines;
+
+	//Pairs of instructions that are fused into one, by the line of the first
+	//Lines that don't start a pair are null
+	public final Superinstruction[] superinstructions;
+
+	//Labels and their associated lines
+	public final Map<String, Integer> labels;
+
+	//Everything wrong with the program found while assembling and verifying it, in line order
+	public final List<AssemblyError> errors;
+
+	//What the program was assembled with, it only runs on a machine of the same shape
+	public final MachineConfiguration configuration;
+
+	//Whether the Verifier found nothing wrong, only verified programs are ever run
+	public boolean isVerified = false;
+
+	//Whether the instruction on each line writes MH with a value RangeAnalysis proved is always a valid address
+	//Those writes don't have to be checked
+	public boolean[] isSafeMemoryHeadWrite;
+
+	//The pure subroutine starting on each line, whose calls can be remembered, or null for lines that don't start one
+	public Subroutine[] subroutines;
+
+	public Program( Instruction[] instructions, int[] nextExecutableLines, Superinstruction[] superinstructions, Map<String, Integer> labels, List<AssemblyError> errors, MachineConfiguration configuration ) {
+		this.instructions = instructions;
+		this.nextExecutableLines = nextExecutableLines;
+		this.superinstructions = superinstructions;
+		this.labels = labels;
+		this.errors = errors;
+		this.configuration = configuration;
+		this.isSafeMemoryHeadWrite = new boolean[ instructions.length ];
+		this.subroutines = new Subroutine[ instructions.length ];
+	}
+
+	//Returns the instruction on a given line
+	public Instruction getInstruction( int line ) {
+
+		//Lines before the start of the program are never code
+		if( line < 0 ) {
+			return Instruction.invalid( line, getFirstExecutableLine(), Strings.UnrecognizedOpcode );
+		}
+
+		return instructions[ line ];
+	}
+
+	//Returns the number of lines in the program
+	public int getLineCount() {
+		return instructions.length;
+	}
+
+	//Returns the first executable line after a given line, or the line count if there isn't one
+	public int getNextExecutableLine( int line ) {
+
+		//Everything before the start of the program leads to the first executable line
+		if( line < -1 ) {
+			line = -1;
+		}
+
+		//Everything after the end of the program is the end of the program
+		if( line >= instructions.length ) {
+			return instructions.length;
+		}
+
+		return nextExecutableLines[ line + 1 ];
+	}
+
+	//Returns the first executable line in the program, or the line count if there isn't one
+	public int getFirstExecutableLine() {
+		return getNextExecutableLine( -1 );
+	}
+
+	//Returns whether a line holds code
+	public boolean isExecutable( int line ) {
+		return line >= 0 && line < instructions.length && getNextExecutableLine( line - 1 ) == line;
+	}
+
+	//Takes lines out of the way through the program, so moving on from the lines before them skips them like comments
+	//Their instructions stay, so writing their exact line to PC still runs them
+	void removeLines( boolean[] isRemoved ) {
+
+		boolean[] isStillExecutable = new boolean[ instructions.length ];
+		for (int line = 0; line < instructions.length; line++) {
+			isStillExecutable[ line ] = isExecutable( line ) && !isRemoved[ line ];
+		}
+
+		int nextExecutableLine = instructions.length;
+		for (int line = instructions.length - 1; line >= -1; line--) {
+			nextExecutableLines[ line + 1 ] = nextExecutableLine;
+
+			if( line >= 0 && isStillExecutable[ line ] ) {
+				nextExecutableLine = line;
+			}
+		}
+
+	}
+
+	//A problem with the program that keeps it from being run, and the line it was found on
+	public static class AssemblyError {
+
+		public final int line;
+		public final String message;
+
+		public AssemblyError( int line, String message ) {
+			this.line = line;
+			this.message = message;
+		}
+
+	}
+
+}
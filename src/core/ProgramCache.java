@@ -0,0 +1,398 @@
+package core;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import misc.Config;
+
+//Keeps assembled programs by the SHA-256 of their source, so code that's run again skips assembling entirely
+//The most recently used are kept in memory, up to a number of lines in all, and every program can also be written to a
+//folder so it's still there the next time A100 runs
+//
+//Source is compared with its line endings normalized, along with every setting that changes how it assembles
+//Programs are never changed once assembled, so a single program can be run by any number of engines at once
+public class ProgramCache {
+
+	//Written at the start of every file, the version changes whenever what's written does so old files are never misread
+	//It's also part of every key, so it changes whenever decoding or optimizing does too and programs from before are assembled again
+	//What's proven about a program isn't written at all, it's proven again from the instructions whenever one is read back
+	private static final int FILE_MAGIC = 0x41313030;
+	private static final int FILE_VERSION = 2;
+
+	//Programs kept in the folder end with this
+	private static final String fileExtension = ".program";
+
+	private static final Charset utf8 = Charset.forName( "UTF-8" );
+
+	//What programs are assembled with, copied so every key is worked out from what its program was really assembled with
+	private final MachineConfiguration configuration;
+
+	//The most lines kept in memory
+	private final int maxLines;
+
+	//Where programs are also kept, or null for nowhere
+	private final Path folder;
+
+	//Programs by the hash of their source, in the order they were last used
+	private final LinkedHashMap<String, Program> programs = new LinkedHashMap<String, Program>( 16, 0.75f, true );
+
+	//How many lines the programs in memory have between them
+	private long lineCount = 0;
+
+	//Metrics, kept for as long as the cache is
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong diskErrors = new AtomicLong();
+
+	//Keeps programs assembled with a configuration, as many and wherever Config says to
+	public ProgramCache( MachineConfiguration configuration ) {
+		this( configuration, Config.programCacheLines, Config.programCacheFolder == null ? null : Paths.get( Config.programCacheFolder ) );
+	}
+
+	//Keeps programs assembled with a configuration, with up to maxLines lines of them in memory and all of them in a folder
+	//The folder may be null to only keep them in memory, and is made the first time a program is written to it
+	public ProgramCache( MachineConfiguration configuration, int maxLines, Path folder ) {
+		this.configuration = configuration.copy();
+		this.maxLines = maxLines;
+		this.folder = folder;
+	}
+
+	//Returns the program some code assembles to, only assembling it if it isn't kept anywhere
+	//Safe from any thread, though two threads asking for the same new code at once might both assemble it
+	public Program get( String[] lines ) {
+
+		String key = hash( lines );
+
+		synchronized( programs ) {
+			Program program = programs.get( key );
+			if( program != null ) {
+				memoryHits.incrementAndGet();
+				return program;
+			}
+		}
+
+		Program program = folder == null ? null : read( key, lines.length );
+
+		if( program != null ) {
+			diskHits.incrementAndGet();
+		}else {
+			misses.incrementAndGet();
+			program = new Assembler( configuration ).assemble( lines );
+			if( folder != null ) {
+				write( key, program );
+			}
+		}
+
+		remember( key, program );
+		return program;
+	}
+
+	//Keeps a program in memory, forgetting the least recently used ones until everything fits
+	//A program with more lines than fit on their own isn't kept at all
+	private void remember( String key, Program program ) {
+
+		int lines = program.getLineCount();
+		if( lines > maxLines ) {
+			return;
+		}
+
+		synchronized( programs ) {
+
+			Program replaced = programs.put( key, program );
+			if( replaced != null ) {
+				lineCount -= replaced.getLineCount();
+			}
+			lineCount += lines;
+
+			Iterator<Program> eldest = programs.values().iterator();
+			while( lineCount > maxLines ) {
+				lineCount -= eldest.next().getLineCount();
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+
+		}
+
+	}
+
+	//Returns the SHA-256 of some code and the settings it's assembled with, in hex
+	private String hash( String[] lines ) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance( "SHA-256" );
+		} catch ( NoSuchAlgorithmException e ) {
+			//Every JVM has SHA-256
+			throw new IllegalStateException( e );
+		}
+
+		//Anything that changes what a program assembles to
+		int[] settings = {
+				FILE_VERSION,
+				configuration.optimize ? 1 : 0,
+				configuration.memoizeSubroutines ? 1 : 0,
+				configuration.minNumberRange,
+				configuration.maxNumberRange,
+				configuration.registerCount,
+				configuration.mainMemoryLength,
+				configuration.stringBufferSize
+		};
+		for( int setting : settings ) {
+			digest.update( (byte) ( setting >>> 24 ) );
+			digest.update( (byte) ( setting >>> 16 ) );
+			digest.update( (byte) ( setting >>> 8 ) );
+			digest.update( (byte) setting );
+		}
+
+		//Lines are already split apart from however they ended
+		for( String line : lines ) {
+			digest.update( line.getBytes( utf8 ) );
+			digest.update( (byte) '\n' );
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for( byte b : digest.digest() ) {
+			hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+		}
+		return hex.toString();
+	}
+
+	/*
+	 * Folder
+	 */
+
+	//Reads a program of lineCount lines back from the folder, or returns null if it isn't there or can't be read
+	private Program read( String key, int lineCount ) {
+
+		Path file = folder.resolve( key + fileExtension );
+
+		try {
+			InputStream input = Files.newInputStream( file );
+			try {
+				return readProgram( new DataInputStream( new BufferedInputStream( input ) ), lineCount );
+			} finally {
+				input.close();
+			}
+		} catch ( NoSuchFileException e ) {
+			return null;
+		} catch ( IOException e ) {
+			//Anything unreadable is assembled again and written over
+			diskErrors.incrementAndGet();
+			return null;
+		} catch ( RuntimeException e ) {
+			diskErrors.incrementAndGet();
+			return null;
+		}
+
+	}
+
+	//Writes a program to the folder
+	//It's written to a file of its own first and then moved into place, so nothing ever reads half a program
+	private void write( String key, Program program ) {
+
+		Path temporary = null;
+
+		try {
+			Files.createDirectories( folder );
+			temporary = Files.createTempFile( folder, key, ".tmp" );
+
+			OutputStream output = Files.newOutputStream( temporary );
+			try {
+				DataOutputStream data = new DataOutputStream( new BufferedOutputStream( output ) );
+				writeProgram( data, program );
+				data.flush();
+			} finally {
+				output.close();
+			}
+
+			Files.move( temporary, folder.resolve( key + fileExtension ), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		} catch ( IOException e ) {
+			//The program is still kept in memory, it just has to be assembled again next time
+			diskErrors.incrementAndGet();
+			if( temporary != null ) {
+				try {
+					Files.deleteIfExists( temporary );
+				} catch ( IOException ignored ) {
+					//Nothing else can be done about it
+				}
+			}
+		}
+
+	}
+
+	//Writes everything about a program that took decoding and optimizing to work out
+	//Nothing proven about it is written, a file could have been changed by anyone, so that's all worked out again when it's read back
+	//along with the superinstructions
+	private static void writeProgram( DataOutputStream data, Program program ) throws IOException {
+
+		int lineCount = program.getLineCount();
+
+		data.writeInt( FILE_MAGIC );
+		data.writeInt( FILE_VERSION );
+		data.writeInt( lineCount );
+
+		for (int line = -1; line < lineCount; line++) {
+			data.writeInt( program.getNextExecutableLine( line ) );
+		}
+
+		for( Instruction instruction : program.instructions ) {
+			data.writeUTF( instruction.opcode.name() );
+			data.writeInt( instruction.line );
+			data.writeInt( instruction.next );
+			data.writeInt( instruction.aRegister );
+			data.writeInt( instruction.aValue );
+			data.writeInt( instruction.bRegister );
+			data.writeInt( instruction.bValue );
+			data.writeInt( instruction.destination );
+			data.writeInt( instruction.target );
+			data.writeBoolean( instruction.error != null );
+			if( instruction.error != null ) {
+				data.writeUTF( instruction.error );
+			}
+		}
+
+		data.writeInt( program.labels.size() );
+		for( Map.Entry<String, Integer> label : program.labels.entrySet() ) {
+			data.writeUTF( label.getKey() );
+			data.writeInt( label.getValue() );
+		}
+
+		data.writeInt( program.errors.size() );
+		for( Program.AssemblyError error : program.errors ) {
+			data.writeInt( error.line );
+			data.writeUTF( error.message );
+		}
+
+	}
+
+	//Reads a program written by writeProgram, which should have lineCount lines since that's how many its source has
+	//Throws an IOException if it wasn't written by this version or doesn't hold together
+	private Program readProgram( DataInputStream data, int lineCount ) throws IOException {
+
+		if( data.readInt() != FILE_MAGIC || data.readInt() != FILE_VERSION ) {
+			throw new IOException( "not a program written by this version" );
+		}
+
+		//Checked before anything is made that big
+		if( data.readInt() != lineCount ) {
+			throw new IOException( "not the same number of lines as its source" );
+		}
+
+		//Every line's next executable line comes after it, or is the end of the program
+		int[] nextExecutableLines = new int[ lineCount + 1 ];
+		for (int i = 0; i < nextExecutableLines.length; i++) {
+			nextExecutableLines[ i ] = data.readInt();
+			if( nextExecutableLines[ i ] < i || nextExecutableLines[ i ] > lineCount ) {
+				throw new IOException( "next executable line out of range" );
+			}
+		}
+
+		Instruction[] instructions = new Instruction[ lineCount ];
+		for (int line = 0; line < lineCount; line++) {
+			Opcode opcode = Opcode.valueOf( data.readUTF() );
+			int instructionLine = data.readInt();
+			int next = data.readInt();
+			int aRegister = data.readInt();
+			int aValue = data.readInt();
+			int bRegister = data.readInt();
+			int bValue = data.readInt();
+			int destination = data.readInt();
+			int target = data.readInt();
+			String error = data.readBoolean() ? data.readUTF() : null;
+			if( instructionLine != line || next <= line || next > lineCount ) {
+				throw new IOException( "instruction out of place" );
+			}
+			instructions[ line ] = new Instruction( opcode, instructionLine, next, aRegister, aValue, bRegister, bValue, destination, target, error );
+		}
+
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		int labelCount = data.readInt();
+		for (int i = 0; i < labelCount; i++) {
+			labels.put( data.readUTF(), data.readInt() );
+		}
+
+		List<Program.AssemblyError> errors = new ArrayList<Program.AssemblyError>();
+		int errorCount = data.readInt();
+		for (int i = 0; i < errorCount; i++) {
+			errors.add( new Program.AssemblyError( data.readInt(), data.readUTF() ) );
+		}
+
+		Program program = new Program( instructions, nextExecutableLines, new Superinstruction[ lineCount ], labels, errors, configuration );
+
+		//A program with errors is never run, so there's nothing to prove
+		//Otherwise it's proven the same way the assembler does, with optimizing already done
+		if( errors.isEmpty() ) {
+			Verifier.verify( program );
+		}
+
+		Assembler.fuseInstructions( program );
+
+		if( program.isVerified ) {
+			program.isSafeMemoryHeadWrite = RangeAnalysis.findSafeMemoryHeadWrites( program );
+		}
+
+		if( program.isVerified && configuration.memoizeSubroutines ) {
+			program.subroutines = SubroutineAnalysis.findPureSubroutines( program );
+		}
+
+		return program;
+	}
+
+	/*
+	 * Metrics
+	 */
+
+	//Returns how many programs were found in memory
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	//Returns how many programs were read back from the folder
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	//Returns how many programs had to be assembled
+	public long getMisses() {
+		return misses.get();
+	}
+
+	//Returns how many programs were forgotten from memory to make room for others
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	//Returns how many programs couldn't be read from or written to the folder
+	public long getDiskErrors() {
+		return diskErrors.get();
+	}
+
+	//Returns how many lines of programs are in memory right now
+	public long getLineCount() {
+		synchronized( programs ) {
+			return lineCount;
+		}
+	}
+
+}
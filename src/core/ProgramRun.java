@@ -0,0 +1,291 @@
+package core;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//A single program run to the end on a pooled engine, within a step budget and a time limit, and how it went
+//Used by everything that runs programs for someone else and reports back as JSON, like the batch runner and the server
+public class ProgramRun {
+
+	//Ways a run can stop
+	public static final String FINISHED = "finished";
+	public static final String ERROR = "error";
+	public static final String STEP_LIMIT = "step-limit";
+	public static final String TIMEOUT = "timeout";
+
+	//Stops runs that go past their time limit, one thread shared by every run
+	private static final ScheduledThreadPoolExecutor deadlines = createDeadlineTimer();
+
+	//How many characters of what a program prints are kept, anything after that is dropped
+	private static final int outputLimit = 1 << 20;
+
+	//How it stopped, one of the statuses above
+	public final String status;
+
+	//How many steps it took and how long that took
+	public final long steps;
+	public final long wallNanos;
+
+	//The fault that stopped it and the line it was raised on counting from zero, or null and -1 if there wasn't one
+	public final Trap trap;
+	public final int trapLine;
+
+	//Every error reported, in the order they were reported, by the line people count from one and the message
+	public final List<Integer> errorLines;
+	public final List<String> errorMessages;
+
+	//Every register once it stopped
+	public final int[] registers;
+
+	//Everything printed, a line per PRNT, and whether some of it had to be dropped
+	public final String output;
+	public final boolean isOutputTruncated;
+
+	private ProgramRun( String status, long steps, long wallNanos, Engine engine, Collector collector ) {
+		this.status = status;
+		this.steps = steps;
+		this.wallNanos = wallNanos;
+		this.trap = engine.getTrap();
+		this.trapLine = engine.getTrapLine();
+		this.errorLines = collector.errorLines;
+		this.errorMessages = collector.errorMessages;
+		this.registers = engine.getRegisters();
+		this.output = collector.output.toString();
+		this.isOutputTruncated = collector.isOutputTruncated;
+	}
+
+	//Runs a program on an engine from a pool until it ends, takes maxSteps steps or runs for timeoutNanos
+	//The memory image is put into main memory from M0 onwards before it runs, and may be null for none
+	//Throws an IllegalArgumentException if the memory image doesn't fit in main memory or holds a number outside the number range
+	public static ProgramRun run( EnginePool pool, Program program, int[] memoryImage, long maxSteps, long timeoutNanos ) {
+
+		long start = System.nanoTime();
+
+		//Listen from the start so problems found before running are reported too
+		//Engines are used again from one program to the next, with only what the last one touched cleared in between
+		Collector collector = new Collector();
+		Engine engine = pool.acquire( program, collector );
+
+		try {
+
+			if( memoryImage != null ) {
+				if( memoryImage.length > engine.getMemoryLength() ) {
+					throw new IllegalArgumentException( "more than " + engine.getMemoryLength() + " addresses" );
+				}
+				for (int address = 0; address < memoryImage.length; address++) {
+					engine.setMemory( address, memoryImage[ address ] );
+				}
+			}
+
+			//The time limit stops the engine from the timer's thread, so it's seen within a loop of running out however long a step takes
+			Deadline deadline = new Deadline( engine );
+			ScheduledFuture<?> expiry = null;
+			if( timeoutNanos != Long.MAX_VALUE ) {
+				expiry = deadlines.schedule( deadline, Math.max( 0, timeoutNanos - ( System.nanoTime() - start ) ), TimeUnit.NANOSECONDS );
+			}
+
+			try {
+				while( engine.hasNextLine() && engine.getSteps() < maxSteps && !deadline.isExpired() ) {
+					engine.run( maxSteps - engine.getSteps() );
+				}
+			} finally {
+				//The engine mustn't be stopped once it's back in the pool
+				deadline.finish();
+				if( expiry != null ) {
+					expiry.cancel( false );
+				}
+			}
+
+			long elapsed = System.nanoTime() - start;
+
+			//Work out how we stopped
+			String status;
+			if( engine.isHalted() ) {
+				status = ERROR;
+			}else if( deadline.isExpired() && engine.hasNextLine() ) {
+				status = TIMEOUT;
+			}else if( engine.hasNextLine() ) {
+				status = STEP_LIMIT;
+			}else {
+				status = FINISHED;
+			}
+
+			return new ProgramRun( status, engine.getSteps(), elapsed, engine, collector );
+
+		} catch ( Error e ) {
+			//Something like running out of stack can leave the engine part way through a run, so it's never used again
+			engine = null;
+			throw e;
+		} finally {
+			if( engine != null ) {
+				pool.release( engine );
+			}
+		}
+
+	}
+
+	//Creates the timer that stops runs, whose thread never keeps the program from exiting
+	private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread( Runnable task ) {
+				Thread thread = new Thread( task, "A1 run deadlines" );
+				thread.setDaemon( true );
+				return thread;
+			}
+
+		} );
+
+		//Almost every run finishes in time, so their deadlines are dropped as soon as they're cancelled
+		timer.setRemoveOnCancelPolicy( true );
+
+		return timer;
+	}
+
+	//Appends every field describing the run to a JSON object, each starting with a comma
+	public void appendJson( StringBuilder json ) {
+
+		json.append( ",\"status\":\"" ).append( status ).append( '"' );
+		json.append( ",\"steps\":" ).append( steps );
+		json.append( ",\"wallMicros\":" ).append( wallNanos / 1000 );
+
+		//People count lines from one
+		json.append( ",\"trap\":" );
+		if( trap == null ) {
+			json.append( "null" );
+		}else {
+			appendString( json, trap.name() );
+			json.append( ",\"trapLine\":" ).append( trapLine + 1 );
+		}
+
+		json.append( ",\"errors\":[" );
+		for (int i = 0; i < errorLines.size(); i++) {
+			if( i > 0 ) {
+				json.append( ',' );
+			}
+			json.append( "{\"line\":" ).append( errorLines.get( i ) ).append( ",\"message\":" );
+			appendString( json, errorMessages.get( i ) );
+			json.append( '}' );
+		}
+		json.append( ']' );
+
+		json.append( ",\"registers\":{" );
+		for (int i = 0; i < registers.length; i++) {
+			if( i > 0 ) {
+				json.append( ',' );
+			}
+			json.append( '"' ).append( Registers.getName( i ) ).append( "\":" ).append( registers[ i ] );
+		}
+		json.append( '}' );
+
+		json.append( ",\"output\":" );
+		appendString( json, output );
+		if( isOutputTruncated ) {
+			json.append( ",\"outputTruncated\":true" );
+		}
+
+	}
+
+	//Appends text as a JSON string
+	public static void appendString( StringBuilder json, String text ) {
+
+		json.append( '"' );
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt( i );
+			switch( c ) {
+			case '"':
+				json.append( "\\\"" );
+				break;
+			case '\\':
+				json.append( "\\\\" );
+				break;
+			case '\n':
+				json.append( "\\n" );
+				break;
+			case '\r':
+				json.append( "\\r" );
+				break;
+			case '\t':
+				json.append( "\\t" );
+				break;
+			default:
+				if( c < ' ' ) {
+					json.append( String.format( "\\u%04x", (int) c ) );
+				}else {
+					json.append( c );
+				}
+			}
+		}
+
+		json.append( '"' );
+	}
+
+	//Stops a run's engine when its time limit runs out, unless the run has already finished
+	private static class Deadline implements Runnable {
+
+		private final Engine engine;
+		private boolean isExpired = false;
+		private boolean isFinished = false;
+
+		public Deadline( Engine engine ) {
+			this.engine = engine;
+		}
+
+		@Override
+		public synchronized void run() {
+			if( !isFinished ) {
+				isExpired = true;
+				engine.requestStop();
+			}
+		}
+
+		//Called once the run is over, after which the engine is left alone
+		public synchronized void finish() {
+			isFinished = true;
+		}
+
+		public synchronized boolean isExpired() {
+			return isExpired;
+		}
+
+	}
+
+	//Keeps what a single program prints, a line per PRNT, and every error it reports
+	private static class Collector implements MachineOutput {
+
+		private final StringBuilder output = new StringBuilder();
+		private boolean isOutputTruncated = false;
+
+		private final List<Integer> errorLines = new ArrayList<Integer>();
+		private final List<String> errorMessages = new ArrayList<String>();
+
+		@Override
+		public void print( CharSequence text ) {
+
+			if( output.length() + text.length() + 1 > outputLimit ) {
+				isOutputTruncated = true;
+				return;
+			}
+
+			output.append( text ).append( '\n' );
+		}
+
+		@Override
+		public void error( int line, String str ) {
+			errorLines.add( line );
+			errorMessages.add( str );
+		}
+
+		//There is no console to clear
+		@Override
+		public void clearConsole() {}
+
+	}
+
+}
@@ -0,0 +1,417 @@
+package core;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+//Works out the range of values every register can hold when each line starts, so writes to MH that can't leave main memory don't have to be checked
+//Every register is tracked as a low and high bound, starting from the reset machine where everything is 0
+//Each instruction moves the bounds of what it writes, and branches tighten the bounds of what they compare on each way out,
+//which is how a loop counter tested against a limit is known to stay under it
+//Anything that goes out of range traps, so only in range values ever reach the next line
+//
+//Loops are settled by widening any bound that keeps moving straight out to the limit of what the register can hold,
+//and then a few passes without widening win back whatever the branches prove about them
+//Writes to PC lead to every line their value could land on, so programs with computed jumps are still covered
+public class RangeAnalysis {
+
+	//How many times a line's bounds can move before they're widened to the limits
+	private static final int WIDENING_LIMIT = 3;
+
+	//The most passes made after widening to tighten the bounds again
+	//Each pass carries what a branch proves one line further, so this is about how long a loop can be and still be fully tightened
+	private static final int NARROWING_LIMIT = 100;
+
+	private final Program program;
+	private final Instruction[] instructions;
+	private final int lineCount;
+
+	//The shape of the machine the program was assembled for, which sets the bounds every register starts within
+	private final MachineConfiguration configuration;
+
+	//The bounds of every register when each line starts, or null if the line is never reached
+	private int[][] lows;
+	private int[][] highs;
+
+	//How many times each line's bounds have moved
+	private int[] changes;
+
+	//Lines whose bounds moved and need to be passed on again
+	private ArrayDeque<Integer> worklist;
+	private boolean[] isQueued;
+
+	//Whether bounds that keep moving are widened, only while first settling
+	private boolean isWidening;
+
+	private RangeAnalysis( Program program ) {
+		this.program = program;
+		this.instructions = program.instructions;
+		this.lineCount = program.getLineCount();
+		this.configuration = program.configuration;
+	}
+
+	//Returns, for every line, whether its instruction writes MH with a value that's always a valid address
+	//The program must have been verified
+	public static boolean[] findSafeMemoryHeadWrites( Program program ) {
+		return new RangeAnalysis( program ).findSafeMemoryHeadWrites();
+	}
+
+	private boolean[] findSafeMemoryHeadWrites() {
+
+		boolean[] isSafe = new boolean[ lineCount ];
+
+		int firstLine = program.getFirstExecutableLine();
+		if( firstLine >= lineCount ) {
+			return isSafe;
+		}
+
+		settle( firstLine );
+
+		for (int pass = 0; pass < NARROWING_LIMIT; pass++) {
+			if( !narrow( firstLine ) ) {
+				break;
+			}
+		}
+
+		for (int line = 0; line < lineCount; line++) {
+
+			Instruction instruction = instructions[ line ];
+			if( lows[ line ] == null || instruction.destination != Registers.MH ) {
+				continue;
+			}
+
+			long[] written = written( instruction, lows[ line ], highs[ line ] );
+			isSafe[ line ] = written[ 0 ] >= 0 && written[ 1 ] < configuration.mainMemoryLength;
+		}
+
+		return isSafe;
+	}
+
+	//Finds bounds that hold on every line, widening where loops keep them moving
+	private void settle( int firstLine ) {
+
+		lows = new int[ lineCount ][];
+		highs = new int[ lineCount ][];
+		changes = new int[ lineCount ];
+		worklist = new ArrayDeque<Integer>();
+		isQueued = new boolean[ lineCount ];
+		isWidening = true;
+
+		//Everything starts at 0 after a reset
+		flowTo( firstLine, new int[ configuration.getRegisterSlots() ], new int[ configuration.getRegisterSlots() ] );
+
+		while( !worklist.isEmpty() ) {
+			int line = worklist.poll();
+			isQueued[ line ] = false;
+			flowFrom( line, lows[ line ], highs[ line ] );
+		}
+
+	}
+
+	//Runs every line once more on the bounds already found, which can only tighten them
+	//Returns whether anything was tightened
+	private boolean narrow( int firstLine ) {
+
+		int[][] oldLows = lows;
+		int[][] oldHighs = highs;
+
+		lows = new int[ lineCount ][];
+		highs = new int[ lineCount ][];
+		isWidening = false;
+
+		flowTo( firstLine, new int[ configuration.getRegisterSlots() ], new int[ configuration.getRegisterSlots() ] );
+
+		for (int line = 0; line < lineCount; line++) {
+			if( oldLows[ line ] != null ) {
+				flowFrom( line, oldLows[ line ], oldHighs[ line ] );
+			}
+		}
+
+		for (int line = 0; line < lineCount; line++) {
+			if( !Arrays.equals( lows[ line ], oldLows[ line ] ) || !Arrays.equals( highs[ line ], oldHighs[ line ] ) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//Passes the bounds at the start of a line on to every line it can lead to
+	private void flowFrom( int line, int[] low, int[] high ) {
+
+		Instruction instruction = instructions[ line ];
+
+		switch( instruction.opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+			flowBranch( instruction, low, high, true );
+			flowBranch( instruction, low, high, false );
+			return;
+		case BR:
+			flowTo( instruction.target, low, high );
+			return;
+		case INVALID:
+			//Traps every time
+			return;
+		default:
+			break;
+		}
+
+		if( instruction.destination == Instruction.LITERAL ) {
+			flowTo( instruction.next, low, high );
+			return;
+		}
+
+		long[] written = written( instruction, low, high );
+
+		if( instruction.destination == Registers.PC ) {
+			flowJump( instruction, written, low, high );
+			return;
+		}
+
+		//Only values that don't trap make it to the next line
+		long writtenLow = Math.max( written[ 0 ], lowest( instruction.destination ) );
+		long writtenHigh = Math.min( written[ 1 ], highest( instruction.destination ) );
+		if( writtenLow > writtenHigh ) {
+			return;
+		}
+
+		int[] nextLow = low.clone();
+		int[] nextHigh = high.clone();
+		nextLow[ instruction.destination ] = (int) writtenLow;
+		nextHigh[ instruction.destination ] = (int) writtenHigh;
+
+		flowTo( instruction.next, nextLow, nextHigh );
+	}
+
+	//Passes bounds along one way out of a branch, tightened by what the comparison proves about its registers
+	private void flowBranch( Instruction instruction, int[] low, int[] high, boolean isTaken ) {
+
+		int aLow = lowOf( instruction.aRegister, instruction.aValue, low );
+		int aHigh = highOf( instruction.aRegister, instruction.aValue, high );
+		int bLow = lowOf( instruction.bRegister, instruction.bValue, low );
+		int bHigh = highOf( instruction.bRegister, instruction.bValue, high );
+
+		//Not taken is the opposite comparison
+		Opcode comparison = instruction.opcode;
+		if( !isTaken ) {
+			switch( comparison ) {
+			case BNE:
+				comparison = Opcode.BEQ;
+				break;
+			case BEQ:
+				comparison = Opcode.BNE;
+				break;
+			default:
+				break;
+			}
+		}
+
+		long newALow = aLow;
+		long newAHigh = aHigh;
+		long newBLow = bLow;
+		long newBHigh = bHigh;
+
+		switch( comparison ) {
+		case BLT:
+			if( isTaken ) {
+				//A < B
+				newAHigh = Math.min( aHigh, (long) bHigh - 1 );
+				newBLow = Math.max( bLow, (long) aLow + 1 );
+			}else {
+				//A >= B
+				newALow = Math.max( aLow, bLow );
+				newBHigh = Math.min( bHigh, aHigh );
+			}
+			break;
+		case BGT:
+			if( isTaken ) {
+				//A > B
+				newALow = Math.max( aLow, (long) bLow + 1 );
+				newBHigh = Math.min( bHigh, (long) aHigh - 1 );
+			}else {
+				//A <= B
+				newAHigh = Math.min( aHigh, bHigh );
+				newBLow = Math.max( bLow, aLow );
+			}
+			break;
+		case BEQ:
+			newALow = newBLow = Math.max( aLow, bLow );
+			newAHigh = newBHigh = Math.min( aHigh, bHigh );
+			break;
+		default:
+			//Not equal only rules out a value at the edge of one side when the other side is a single value
+			if( bLow == bHigh ) {
+				if( aLow == bLow ) {
+					newALow++;
+				}
+				if( aHigh == bLow ) {
+					newAHigh--;
+				}
+			}
+			if( aLow == aHigh ) {
+				if( bLow == aLow ) {
+					newBLow++;
+				}
+				if( bHigh == aLow ) {
+					newBHigh--;
+				}
+			}
+			break;
+		}
+
+		//This way out can never be taken
+		if( newALow > newAHigh || newBLow > newBHigh ) {
+			return;
+		}
+
+		int[] nextLow = low.clone();
+		int[] nextHigh = high.clone();
+
+		if( instruction.aRegister != Instruction.LITERAL ) {
+			nextLow[ instruction.aRegister ] = (int) newALow;
+			nextHigh[ instruction.aRegister ] = (int) newAHigh;
+		}
+		if( instruction.bRegister != Instruction.LITERAL ) {
+			nextLow[ instruction.bRegister ] = (int) newBLow;
+			nextHigh[ instruction.bRegister ] = (int) newBHigh;
+		}
+
+		flowTo( isTaken ? instruction.target : instruction.next, nextLow, nextHigh );
+	}
+
+	//Passes bounds along every line a write to PC could land on
+	private void flowJump( Instruction instruction, long[] written, int[] low, int[] high ) {
+
+		long firstTarget;
+		long lastTarget;
+
+		if( instruction.opcode == Opcode.MOV ) {
+			//Moving into PC goes to the next executable line after the one written
+			firstTarget = program.getNextExecutableLine( (int) Math.max( written[ 0 ], Integer.MIN_VALUE ) );
+			lastTarget = program.getNextExecutableLine( (int) Math.min( written[ 1 ], Integer.MAX_VALUE ) );
+		}else {
+			//Anything before the first line traps, and anything after the last ends the program
+			firstTarget = Math.max( written[ 0 ], 0 );
+			lastTarget = Math.min( written[ 1 ], lineCount - 1 );
+		}
+
+		//Lines the Optimizer removed still run when PC is written with their exact line, so only lines that aren't code are left out
+		for (long target = firstTarget; target <= lastTarget && target < lineCount; target++) {
+			if( instructions[ (int) target ].opcode != Opcode.INVALID ) {
+				flowTo( (int) target, low, high );
+			}
+		}
+
+	}
+
+	//Joins bounds into the start of a line, queuing it to be passed on again if they moved
+	private void flowTo( int line, int[] low, int[] high ) {
+
+		//The end of the program has nothing after it
+		if( line >= lineCount ) {
+			return;
+		}
+
+		if( lows[ line ] == null ) {
+			lows[ line ] = low.clone();
+			highs[ line ] = high.clone();
+			queue( line );
+			return;
+		}
+
+		int[] lineLow = lows[ line ];
+		int[] lineHigh = highs[ line ];
+		boolean isWidened = isWidening && changes[ line ] >= WIDENING_LIMIT;
+		boolean isChanged = false;
+
+		for (int register = 0; register < configuration.getRegisterSlots(); register++) {
+
+			if( low[ register ] < lineLow[ register ] ) {
+				lineLow[ register ] = isWidened ? lowest( register ) : low[ register ];
+				isChanged = true;
+			}
+
+			if( high[ register ] > lineHigh[ register ] ) {
+				lineHigh[ register ] = isWidened ? highest( register ) : high[ register ];
+				isChanged = true;
+			}
+
+		}
+
+		if( isChanged ) {
+			changes[ line ]++;
+			queue( line );
+		}
+
+	}
+
+	//Queues a line to be passed on again, only while settling
+	private void queue( int line ) {
+		if( isWidening && !isQueued[ line ] ) {
+			isQueued[ line ] = true;
+			worklist.add( line );
+		}
+	}
+
+	//Returns the bounds of the value an instruction writes to its destination, before anything out of range traps
+	private long[] written( Instruction instruction, int[] low, int[] high ) {
+
+		long aLow = lowOf( instruction.aRegister, instruction.aValue, low );
+		long aHigh = highOf( instruction.aRegister, instruction.aValue, high );
+		long bLow = lowOf( instruction.bRegister, instruction.bValue, low );
+		long bHigh = highOf( instruction.bRegister, instruction.bValue, high );
+
+		switch( instruction.opcode ) {
+		case MOV:
+			return new long[] { aLow, aHigh };
+		case ADD:
+			return new long[] { aLow + bLow, aHigh + bHigh };
+		case SUB:
+			return new long[] { aLow - bHigh, aHigh - bLow };
+		case ASL:
+			//Only a single shift amount is followed, and only while nothing is shifted out of an int
+			if( bLow == bHigh ) {
+				int shift = (int) bLow & 31;
+				long shiftedLow = aLow << shift;
+				long shiftedHigh = aHigh << shift;
+				if( shiftedLow >= Integer.MIN_VALUE && shiftedHigh <= Integer.MAX_VALUE ) {
+					return new long[] { shiftedLow, shiftedHigh };
+				}
+			}
+			return new long[] { Integer.MIN_VALUE, Integer.MAX_VALUE };
+		case ASR:
+			//Shifting right only ever moves a value towards 0 or -1, and never past them
+			if( bLow == bHigh ) {
+				int shift = (int) bLow & 31;
+				return new long[] { aLow >> shift, aHigh >> shift };
+			}
+			return new long[] { Math.min( aLow, -1 ), Math.max( aHigh, 0 ) };
+		default:
+			//Main memory only ever holds values from registers, so they're somewhere in the number range
+			return new long[] { configuration.minNumberRange, configuration.maxNumberRange };
+		}
+
+	}
+
+	//Returns the low bound of an argument
+	private static int lowOf( int register, int literal, int[] low ) {
+		return register == Instruction.LITERAL ? literal : low[ register ];
+	}
+
+	//Returns the high bound of an argument
+	private static int highOf( int register, int literal, int[] high ) {
+		return register == Instruction.LITERAL ? literal : high[ register ];
+	}
+
+	//Returns the lowest value a register can hold without trapping
+	private int lowest( int register ) {
+		return register == Registers.MH ? 0 : configuration.minNumberRange;
+	}
+
+	//Returns the highest value a register can hold without trapping
+	private int highest( int register ) {
+		return register == Registers.MH ? configuration.mainMemoryLength - 1 : configuration.maxNumberRange;
+	}
+
+}
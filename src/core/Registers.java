@@ -0,0 +1,63 @@
+package core;
+
+//The layout of the register file
+//Registers are stored in a flat array, this maps between their names and their slots in it
+//How many regular registers there are is up to the MachineConfiguration, so every R followed by a number has a slot here
+//and the ones past the end of a machine's register file are turned away when a program is assembled
+public class Registers {
+
+	//Special registers live at fixed slots
+	//The program counter
+	public static final int PC = 0;
+
+	//The main memory read/write head
+	public static final int MH = 1;
+
+	//The slot of R0, the first regular register
+	public static final int FIRST_REGULAR = 2;
+
+	//The most digits a regular register's number is read with, so its slot always fits in an int
+	private static final int MAX_DIGITS = 9;
+
+	//Returns the slot of a register or -1 if no register has that name
+	public static int indexOf( String name ) {
+
+		if( name.equals( "PC" ) ) {
+			return PC;
+		}
+		if( name.equals( "MH" ) ) {
+			return MH;
+		}
+
+		//Regular registers are R and their number, written without leading zeros
+		int digits = name.length() - 1;
+		if( digits < 1 || digits > MAX_DIGITS || name.charAt( 0 ) != 'R' || ( digits > 1 && name.charAt( 1 ) == '0' ) ) {
+			return -1;
+		}
+
+		int number = 0;
+		for (int i = 1; i < name.length(); i++) {
+			char c = name.charAt( i );
+			if( c < '0' || c > '9' ) {
+				return -1;
+			}
+			number = number * 10 + ( c - '0' );
+		}
+
+		return FIRST_REGULAR + number;
+	}
+
+	//Returns the name of the register in a slot
+	public static String getName( int index ) {
+
+		if( index == PC ) {
+			return "PC";
+		}
+		if( index == MH ) {
+			return "MH";
+		}
+
+		return "R" + ( index - FIRST_REGULAR );
+	}
+
+}
@@ -0,0 +1,84 @@
+package core;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+//Sends an engine's snapshots from the thread running it over to the Swing thread
+//Snapshots that don't have to be shown are skipped while the Swing thread is still behind, and whatever changes in the meantime
+//is picked up by the next one, but one that has to be shown is never dropped
+//This is the whole of the window's update path, so the benchmark measures it through here too
+public class SnapshotPublisher {
+
+	//What the Swing thread does with each snapshot, in order since each only holds what changed
+	public interface Viewer {
+		public void show( MachineSnapshot snapshot );
+	}
+
+	private final Viewer viewer;
+
+	//Snapshots on their way to the Swing thread
+	private final SnapshotRing snapshots = new SnapshotRing( 64 );
+
+	//Set while the Swing thread has been asked to show the snapshots waiting for it
+	private final AtomicBoolean isShowingSnapshots = new AtomicBoolean( false );
+
+	//Set when a snapshot had to be shown but there was no room for it, so it's taken as soon as there is
+	private boolean isSnapshotOwed = false;
+
+	public SnapshotPublisher( Viewer viewer ) {
+		this.viewer = viewer;
+	}
+
+	//Copies the engine's current state and sends it over to be shown
+	//Unless forced, nothing is sent while the Swing thread is still behind on the last ones
+	//Returns whether a snapshot was sent
+	//Only called on the thread running the engine
+	public boolean publish( Engine engine, boolean force ) {
+
+		if( snapshots.isFull() ) {
+			//Nothing can be dropped, so if this one had to be shown it's taken once the Swing thread catches up
+			isSnapshotOwed = isSnapshotOwed || force;
+			return false;
+		}
+
+		if( !force && isShowingSnapshots.get() ) {
+			return false;
+		}
+
+		snapshots.offer( engine.snapshot() );
+		isSnapshotOwed = false;
+
+		//Only ask the Swing thread once for however many are waiting
+		if( isShowingSnapshots.compareAndSet( false, true ) ) {
+			SwingUtilities.invokeLater( new Runnable() {
+
+				@Override
+				public void run() {
+					showSnapshots();
+				}
+
+			});
+		}
+
+		return true;
+	}
+
+	//Returns whether a snapshot that had to be shown is still waiting for room
+	public boolean isSnapshotOwed() {
+		return isSnapshotOwed;
+	}
+
+	//Shows every snapshot waiting for the Swing thread
+	//Only called on the Swing thread
+	private void showSnapshots() {
+
+		isShowingSnapshots.set( false );
+
+		MachineSnapshot snapshot;
+		while( ( snapshot = snapshots.poll() ) != null ) {
+			viewer.show( snapshot );
+		}
+
+	}
+
+}
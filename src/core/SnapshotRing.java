@@ -0,0 +1,65 @@
+package core;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Hands snapshots from the thread running the machine to the Swing thread without either ever waiting on the other
+//Only one thread may offer and only one thread may poll
+//Snapshots only hold what changed since the one before, so none can be dropped
+//When the ring is full the producer should leave the changes in the machine and take a snapshot later instead
+public class SnapshotRing {
+
+	//The slots, used in order and wrapped around
+	private final MachineSnapshot[] slots;
+	private final int mask;
+
+	//How many snapshots have ever been offered and polled
+	//Each is only written by its own side, the other side only reads it
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong polled = new AtomicLong();
+
+	//The capacity is rounded up to a power of two
+	public SnapshotRing( int capacity ) {
+		int size = Integer.highestOneBit( Math.max( 1, capacity - 1 ) ) << 1;
+		slots = new MachineSnapshot[ size ];
+		mask = size - 1;
+	}
+
+	//Returns whether there's no room for another snapshot, only meaningful to the producer
+	public boolean isFull() {
+		return offered.get() - polled.get() >= slots.length;
+	}
+
+	//Adds a snapshot, returning false if the ring is full
+	public boolean offer( MachineSnapshot snapshot ) {
+
+		long index = offered.get();
+		if( index - polled.get() >= slots.length ) {
+			return false;
+		}
+
+		slots[ (int) index & mask ] = snapshot;
+
+		//Publishes the slot to the consumer, which reads the count before the slot
+		offered.lazySet( index + 1 );
+
+		return true;
+	}
+
+	//Removes the oldest snapshot, or returns null if there isn't one
+	public MachineSnapshot poll() {
+
+		long index = polled.get();
+		if( index >= offered.get() ) {
+			return null;
+		}
+
+		int slot = (int) index & mask;
+		MachineSnapshot snapshot = slots[ slot ];
+		slots[ slot ] = null;
+
+		//Hands the slot back to the producer
+		polled.lazySet( index + 1 );
+
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,31 @@
+package core;
+
+//A subroutine that only works on registers, found by SubroutineAnalysis
+//Everything it does depends on nothing but its input registers, so running it again with the same inputs always ends the same way
+//and its result can be remembered instead
+public class Subroutine {
+
+	//The line it starts on
+	public final int entry;
+
+	//The register moved into PC to return, which holds the line it was called from
+	public final int returnRegister;
+
+	//Whether each line returns, by moving returnRegister into PC
+	public final boolean[] isReturn;
+
+	//The registers its result depends on, other than the return register
+	public final int[] inputRegisters;
+
+	//The registers it might write, which make up its result
+	public final int[] outputRegisters;
+
+	public Subroutine( int entry, int returnRegister, boolean[] isReturn, int[] inputRegisters, int[] outputRegisters ) {
+		this.entry = entry;
+		this.returnRegister = returnRegister;
+		this.isReturn = isReturn;
+		this.inputRegisters = inputRegisters;
+		this.outputRegisters = outputRegisters;
+	}
+
+}
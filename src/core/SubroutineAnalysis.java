@@ -0,0 +1,576 @@
+package core;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Finds the subroutines in a program whose results depend only on registers, so calls to them can be remembered
+//
+//A subroutine starts on any line a BR jumps to and is everything that can be reached from there before it returns,
+//as long as nothing in it leads back to where it starts
+//It returns by moving the line it was called from into PC, the same way MOV R2 PC does in mathlib
+//Everything in between can only do arithmetic on registers, branch and move known lines into PC,
+//so no memory, string buffer or console, and it has to loop, since anything shorter is quicker to run than to look up
+//
+//Each register is tracked as the few values it could hold, either numbers or whatever a register held when the subroutine
+//was called, so a return is a move into PC of what a register held going in, and a call it makes to another subroutine,
+//which moves a known line into PC to come back, is just one more jump, the way POW calls MULT
+//
+//Its inputs are the registers it might read before writing, plus any it only writes on some ways through,
+//since those still hold whatever they held going in
+public class SubroutineAnalysis {
+
+	//The most values a register is tracked as before it could be holding anything
+	private static final int VALUE_LIMIT = 8;
+
+	//A value that's whatever a register held when the subroutine was called, offset by the register
+	//Anything below this is a number
+	private static final long CALLED_WITH = 1L << 32;
+
+	private final Program program;
+	private final Instruction[] instructions;
+	private final int lineCount;
+
+	//How many registers the machine the program was assembled for has, special registers included
+	private final int registerSlots;
+
+	//The values each register could hold when each line starts, null for registers that could hold anything
+	//Lines that are never reached are null
+	private long[][][] values;
+
+	//Lines whose values changed and need to be passed on again
+	private ArrayDeque<Integer> worklist;
+	private boolean[] isQueued;
+
+	private SubroutineAnalysis( Program program ) {
+		this.program = program;
+		this.instructions = program.instructions;
+		this.lineCount = program.getLineCount();
+		this.registerSlots = program.configuration.getRegisterSlots();
+	}
+
+	//Returns the subroutine starting on every line, or null for lines that don't start one
+	//The program must have been verified
+	public static Subroutine[] findPureSubroutines( Program program ) {
+		return new SubroutineAnalysis( program ).findPureSubroutines();
+	}
+
+	//Returns whether each line returns from one of a program's pure subroutines
+	//Engines hand these lines back to the machine, which needs to see a call end when it runs the call's lines through them
+	public static boolean[] findReturnLines( Program program ) {
+
+		boolean[] isReturnLine = new boolean[ program.getLineCount() ];
+
+		for (int entry = 0; entry < isReturnLine.length; entry++) {
+			Subroutine subroutine = program.subroutines[ entry ];
+			if( subroutine == null ) {
+				continue;
+			}
+			for (int line = 0; line < isReturnLine.length; line++) {
+				isReturnLine[ line ] = isReturnLine[ line ] || subroutine.isReturn[ line ];
+			}
+		}
+
+		return isReturnLine;
+	}
+
+	private Subroutine[] findPureSubroutines() {
+
+		Subroutine[] subroutines = new Subroutine[ lineCount ];
+		boolean[] isAnalyzed = new boolean[ lineCount ];
+
+		//The lines each subroutine can reach before it returns
+		boolean[][] bodies = new boolean[ lineCount ][];
+
+		for (int line = 0; line < lineCount; line++) {
+
+			Instruction instruction = instructions[ line ];
+			if( !program.isExecutable( line ) || instruction.opcode != Opcode.BR || instruction.target >= lineCount ) {
+				continue;
+			}
+
+			int entry = instruction.target;
+			if( !isAnalyzed[ entry ] ) {
+				isAnalyzed[ entry ] = true;
+				subroutines[ entry ] = analyze( entry );
+				if( subroutines[ entry ] != null ) {
+					bodies[ entry ] = findBody();
+				}
+			}
+
+		}
+
+		//A subroutine that ends by jumping into another one, so that the other's return is its own, can't be remembered
+		//The machine only sees the inner call end, and would carry on running the caller's code as if it were still in the outer one
+		for (int outer = 0; outer < lineCount; outer++) {
+
+			if( subroutines[ outer ] == null ) {
+				continue;
+			}
+
+			for (int inner = 0; inner < lineCount; inner++) {
+				if( inner != outer && subroutines[ inner ] != null && bodies[ outer ][ inner ] && isSharingReturns( subroutines[ outer ], subroutines[ inner ] ) ) {
+					subroutines[ outer ] = null;
+					break;
+				}
+			}
+
+		}
+
+		return subroutines;
+	}
+
+	//Returns the lines reached by the last subroutine analyzed
+	private boolean[] findBody() {
+		boolean[] isInBody = new boolean[ lineCount ];
+		for (int line = 0; line < lineCount; line++) {
+			isInBody[ line ] = values[ line ] != null;
+		}
+		return isInBody;
+	}
+
+	//Returns whether two subroutines return from any of the same lines
+	private boolean isSharingReturns( Subroutine a, Subroutine b ) {
+		for (int line = 0; line < lineCount; line++) {
+			if( a.isReturn[ line ] && b.isReturn[ line ] ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//Returns the subroutine starting on a line, or null if it isn't one that can be remembered
+	private Subroutine analyze( int entry ) {
+
+		if( !findValues( entry ) ) {
+			return null;
+		}
+
+		int returnRegister = Instruction.LITERAL;
+		boolean[] isReturn = new boolean[ lineCount ];
+		boolean[] isWritten = new boolean[ registerSlots ];
+		int[][] successors = new int[ lineCount ][];
+		boolean isLoop = false;
+
+		for (int line = 0; line < lineCount; line++) {
+
+			if( values[ line ] == null ) {
+				continue;
+			}
+
+			Instruction instruction = instructions[ line ];
+
+			if( isReturn( instruction, values[ line ] ) ) {
+
+				//Every return has to go through the same register, so a remembered call knows where to go back to
+				if( returnRegister != Instruction.LITERAL && returnRegister != instruction.aRegister ) {
+					return null;
+				}
+
+				returnRegister = instruction.aRegister;
+				isReturn[ line ] = true;
+				successors[ line ] = new int[ 0 ];
+				continue;
+			}
+
+			if( isWrite( instruction ) && instruction.destination != Registers.PC ) {
+				isWritten[ instruction.destination ] = true;
+			}
+
+			successors[ line ] = findSuccessors( instruction, values[ line ] );
+			if( successors[ line ] == null ) {
+				return null;
+			}
+
+			for( int successor : successors[ line ] ) {
+
+				//Coming back to the entry from inside would start the call again inside itself, a call deeper every time round
+				//That's a loop's own head, like DIVLOOP, rather than a subroutine, so only BRs from outside ever make a call
+				if( successor == entry ) {
+					return null;
+				}
+
+				isLoop = isLoop || successor <= line;
+			}
+
+		}
+
+		if( returnRegister == Instruction.LITERAL || !isLoop ) {
+			return null;
+		}
+
+		boolean[][] isWrittenBefore = findWrittenBefore( entry, successors );
+
+		//Anything read that might not have been written yet is an input
+		boolean[] isInput = new boolean[ registerSlots ];
+		for (int line = 0; line < lineCount; line++) {
+
+			if( values[ line ] == null ) {
+				continue;
+			}
+
+			//Returning reads the return register, which is looked up separately
+			if( isReturn[ line ] ) {
+
+				//Registers only written on some ways to a return still hold their old value on the others
+				for (int register = 0; register < registerSlots; register++) {
+					if( isWritten[ register ] && !isWrittenBefore[ line ][ register ] ) {
+						isInput[ register ] = true;
+					}
+				}
+
+				continue;
+			}
+
+			markRead( instructions[ line ].aRegister, isWrittenBefore[ line ], isInput );
+			markRead( instructions[ line ].bRegister, isWrittenBefore[ line ], isInput );
+
+		}
+
+		return new Subroutine( entry, returnRegister, isReturn, toRegisterList( isInput ), toRegisterList( isWritten ) );
+	}
+
+	/*
+	 * Values
+	 */
+
+	//Works out the values every register could hold on every line reached from an entry
+	//Returns false if the subroutine does anything that keeps it from being remembered
+	private boolean findValues( int entry ) {
+
+		values = new long[ lineCount ][][];
+		worklist = new ArrayDeque<Integer>();
+		isQueued = new boolean[ lineCount ];
+
+		//Every register starts as whatever it held when called
+		long[][] called = new long[ registerSlots ][];
+		for (int register = 0; register < registerSlots; register++) {
+			called[ register ] = new long[]{ CALLED_WITH + register };
+		}
+		values[ entry ] = called;
+		enqueue( entry );
+
+		while( !worklist.isEmpty() ) {
+
+			int line = worklist.poll();
+			isQueued[ line ] = false;
+
+			Instruction instruction = instructions[ line ];
+			long[][] before = values[ line ];
+
+			switch( instruction.opcode ) {
+			case MOV:
+			case ADD:
+			case SUB:
+			case ASL:
+			case ASR:
+			case BNE:
+			case BEQ:
+			case BGT:
+			case BLT:
+			case BR:
+				break;
+			default:
+				//Anything else touches memory, the string buffer or the console
+				return false;
+			}
+
+			//Only a move can write PC, either to return or to go to a known line
+			if( instruction.destination == Registers.PC && instruction.opcode != Opcode.MOV ) {
+				return false;
+			}
+
+			if( isReturn( instruction, before ) ) {
+				continue;
+			}
+
+			int[] successors = findSuccessors( instruction, before );
+			if( successors == null ) {
+				return false;
+			}
+
+			long[][] after = before;
+			if( isWrite( instruction ) && instruction.destination != Registers.PC ) {
+				after = before.clone();
+				after[ instruction.destination ] = written( instruction, before );
+			}
+
+			for( int successor : successors ) {
+
+				//Running off the end of the program never returns
+				if( successor >= lineCount ) {
+					return false;
+				}
+
+				flow( successor, after );
+			}
+
+		}
+
+		return true;
+	}
+
+	//Returns whether an instruction returns, by moving into PC exactly what a register held when called
+	private static boolean isReturn( Instruction instruction, long[][] before ) {
+
+		if( instruction.opcode != Opcode.MOV || instruction.destination != Registers.PC || instruction.aRegister == Instruction.LITERAL ) {
+			return false;
+		}
+
+		long[] returned = before[ instruction.aRegister ];
+		return returned != null && returned.length == 1 && returned[ 0 ] >= CALLED_WITH;
+	}
+
+	//Returns the lines an instruction can go to next, or null if they aren't known
+	private int[] findSuccessors( Instruction instruction, long[][] before ) {
+
+		switch( instruction.opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+			return new int[]{ instruction.next, instruction.target };
+		case BR:
+			return new int[]{ instruction.target };
+		default:
+			break;
+		}
+
+		if( instruction.destination != Registers.PC ) {
+			return new int[]{ instruction.next };
+		}
+
+		//Moving a known line into PC goes to the next executable line after it
+		long[] lines = valueOf( instruction.aRegister, instruction.aValue, before );
+		if( lines == null ) {
+			return null;
+		}
+
+		int[] successors = new int[ lines.length ];
+		for (int i = 0; i < lines.length; i++) {
+			if( lines[ i ] >= CALLED_WITH ) {
+				return null;
+			}
+			successors[ i ] = program.getNextExecutableLine( (int) lines[ i ] );
+		}
+		return successors;
+	}
+
+	//Returns the values an instruction could write, or null if it could write anything
+	private static long[] written( Instruction instruction, long[][] before ) {
+
+		long[] a = valueOf( instruction.aRegister, instruction.aValue, before );
+
+		if( instruction.opcode == Opcode.MOV ) {
+			return a;
+		}
+
+		long[] b = valueOf( instruction.bRegister, instruction.bValue, before );
+
+		//Only arithmetic on a few known numbers is known
+		if( a == null || b == null || a.length * b.length > VALUE_LIMIT || a[ a.length - 1 ] >= CALLED_WITH || b[ b.length - 1 ] >= CALLED_WITH ) {
+			return null;
+		}
+
+		long[] results = new long[ a.length * b.length ];
+		int count = 0;
+		for( long x : a ) {
+			for( long y : b ) {
+				results[ count++ ] = calculate( instruction.opcode, (int) x, (int) y );
+			}
+		}
+
+		return toSet( results, count );
+	}
+
+	//Returns the result of arithmetic the same way the machine works it out
+	private static int calculate( Opcode opcode, int a, int b ) {
+		switch( opcode ) {
+		case ADD:
+			return a + b;
+		case SUB:
+			return a - b;
+		case ASL:
+			return a << b;
+		default:
+			return a >> b;
+		}
+	}
+
+	//Returns the values an argument could have, or null if it could be anything
+	private static long[] valueOf( int register, int literal, long[][] values ) {
+		if( register == Instruction.LITERAL ) {
+			return new long[]{ literal };
+		}
+		return values[ register ];
+	}
+
+	//Merges values into what a line already has
+	private void flow( int line, long[][] incoming ) {
+
+		if( values[ line ] == null ) {
+			values[ line ] = incoming.clone();
+			enqueue( line );
+			return;
+		}
+
+		long[][] current = values[ line ];
+		boolean isChanged = false;
+
+		for (int register = 0; register < registerSlots; register++) {
+
+			long[] merged = merge( current[ register ], incoming[ register ] );
+
+			if( !Arrays.equals( merged, current[ register ] ) ) {
+				current[ register ] = merged;
+				isChanged = true;
+			}
+
+		}
+
+		if( isChanged ) {
+			enqueue( line );
+		}
+
+	}
+
+	//Returns every value in either of two sets, or null if that's too many to track
+	private static long[] merge( long[] a, long[] b ) {
+
+		if( a == null || b == null ) {
+			return null;
+		}
+
+		long[] both = Arrays.copyOf( a, a.length + b.length );
+		System.arraycopy( b, 0, both, a.length, b.length );
+
+		return toSet( both, both.length );
+	}
+
+	//Returns the first count values sorted with no repeats, or null if there are too many to track
+	private static long[] toSet( long[] values, int count ) {
+
+		long[] sorted = Arrays.copyOf( values, count );
+		Arrays.sort( sorted );
+
+		int unique = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if( i == 0 || sorted[ i ] != sorted[ i - 1 ] ) {
+				sorted[ unique++ ] = sorted[ i ];
+			}
+		}
+
+		if( unique > VALUE_LIMIT ) {
+			return null;
+		}
+
+		return Arrays.copyOf( sorted, unique );
+	}
+
+	//Queues a line to have its values passed on
+	private void enqueue( int line ) {
+		if( !isQueued[ line ] ) {
+			isQueued[ line ] = true;
+			worklist.add( line );
+		}
+	}
+
+	/*
+	 * Inputs
+	 */
+
+	//Returns, for every line reached, which registers have been written on every way there from the entry
+	private boolean[][] findWrittenBefore( int entry, int[][] successors ) {
+
+		boolean[][] isWrittenBefore = new boolean[ lineCount ][];
+
+		ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+		isWrittenBefore[ entry ] = new boolean[ registerSlots ];
+		worklist.add( entry );
+
+		while( !worklist.isEmpty() ) {
+
+			int line = worklist.poll();
+			Instruction instruction = instructions[ line ];
+
+			boolean[] isWrittenAfter = isWrittenBefore[ line ].clone();
+			if( isWrite( instruction ) && instruction.destination != Registers.PC ) {
+				isWrittenAfter[ instruction.destination ] = true;
+			}
+
+			for( int successor : successors[ line ] ) {
+				flowWritten( successor, isWrittenAfter, isWrittenBefore, worklist, entry );
+			}
+
+		}
+
+		return isWrittenBefore;
+	}
+
+	//Passes what's been written on to a line, keeping only what's written on every way there
+	//Nothing has been written when the entry starts, however it's reached
+	private static void flowWritten( int line, boolean[] isWritten, boolean[][] isWrittenBefore, ArrayDeque<Integer> worklist, int entry ) {
+
+		if( line == entry ) {
+			return;
+		}
+
+		if( isWrittenBefore[ line ] == null ) {
+			isWrittenBefore[ line ] = isWritten.clone();
+			worklist.add( line );
+			return;
+		}
+
+		boolean isChanged = false;
+		for (int register = 0; register < isWritten.length; register++) {
+			if( isWrittenBefore[ line ][ register ] && !isWritten[ register ] ) {
+				isWrittenBefore[ line ][ register ] = false;
+				isChanged = true;
+			}
+		}
+
+		if( isChanged ) {
+			worklist.add( line );
+		}
+
+	}
+
+	//Marks a register that's read as an input if it might not have been written yet
+	//Reading PC is decoded as a literal, since it's always the same line
+	private static void markRead( int register, boolean[] isWrittenBefore, boolean[] isInput ) {
+		if( register != Instruction.LITERAL && !isWrittenBefore[ register ] ) {
+			isInput[ register ] = true;
+		}
+	}
+
+	//Returns whether an instruction writes its destination register
+	private static boolean isWrite( Instruction instruction ) {
+		switch( instruction.opcode ) {
+		case MOV:
+		case ADD:
+		case SUB:
+		case ASL:
+		case ASR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	//Returns the registers that are set, in order
+	private static int[] toRegisterList( boolean[] isSet ) {
+		List<Integer> registers = new ArrayList<Integer>();
+		for (int register = 0; register < isSet.length; register++) {
+			if( isSet[ register ] ) {
+				registers.add( register );
+			}
+		}
+
+		int[] list = new int[ registers.size() ];
+		for (int i = 0; i < list.length; i++) {
+			list[ i ] = registers.get( i );
+		}
+		return list;
+	}
+
+}
@@ -0,0 +1,123 @@
+package core;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import misc.Config;
+
+//Remembers what pure subroutines left in their output registers, by the values of their input registers
+//Holds at most Config.subroutineCacheSize results, forgetting the least recently used first
+public class SubroutineCache {
+
+	//Results by the subroutine and its inputs, in the order they were last used
+	private final Map<Call, int[]> results = new LinkedHashMap<Call, int[]>( 16, 0.75f, true ) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<Call, int[]> eldest ) {
+			if( size() > Config.subroutineCacheSize ) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+
+	};
+
+	//The lines of subroutines that ran past Config.subroutineStepLimit, which are left to run as usual from then on
+	private final Set<Integer> abandonedEntries = new HashSet<Integer>();
+
+	//Metrics, kept until the machine is thrown away
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	//Returns what a subroutine left in its outputs when last called with some inputs, or null if that isn't known
+	public int[] get( Subroutine subroutine, int[] inputs ) {
+
+		int[] outputs = results.get( new Call( subroutine.entry, inputs ) );
+
+		if( outputs == null ) {
+			misses++;
+		}else {
+			hits++;
+		}
+
+		return outputs;
+	}
+
+	//Remembers what a subroutine left in its outputs when called with some inputs
+	public void put( Subroutine subroutine, int[] inputs, int[] outputs ) {
+		results.put( new Call( subroutine.entry, inputs ), outputs );
+	}
+
+	//Stops remembering calls to a subroutine, because one ran for too long
+	//A subroutine that loops back to its own first line would otherwise be called again on every time around
+	public void abandon( Subroutine subroutine ) {
+		abandonedEntries.add( subroutine.entry );
+	}
+
+	//Returns whether calls to a subroutine are still remembered
+	public boolean isAbandoned( Subroutine subroutine ) {
+		return abandonedEntries.contains( subroutine.entry );
+	}
+
+	//Forgets every result, when the program changes
+	public void clear() {
+		results.clear();
+		abandonedEntries.clear();
+	}
+
+	//Returns how many calls were skipped by remembering their result
+	public long getHits() {
+		return hits;
+	}
+
+	//Returns how many calls had to be run
+	public long getMisses() {
+		return misses;
+	}
+
+	//Returns how many results were forgotten to make room for newer ones
+	public long getEvictions() {
+		return evictions;
+	}
+
+	//Returns how many results are remembered right now
+	public int getSize() {
+		return results.size();
+	}
+
+	//A call to the subroutine starting on a line with some inputs
+	private static class Call {
+
+		private final int entry;
+		private final int[] inputs;
+		private final int hash;
+
+		public Call( int entry, int[] inputs ) {
+			this.entry = entry;
+			this.inputs = inputs;
+			this.hash = 31 * entry + Arrays.hashCode( inputs );
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals( Object object ) {
+			if( !( object instanceof Call ) ) {
+				return false;
+			}
+			Call call = (Call) object;
+			return entry == call.entry && Arrays.equals( inputs, call.inputs );
+		}
+
+	}
+
+}
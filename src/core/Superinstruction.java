@@ -0,0 +1,76 @@
+package core;
+
+//Two instructions that always run back to back, decoded as one so an engine can run both with a single dispatch
+//The instructions themselves are left alone, so single steps and error reporting still see every line on its own
+public class Superinstruction {
+
+	//The pairs that are fused
+	public enum Kind {
+
+		//ADD or SUB into a regular register followed by any branch, like a loop counter and its test
+		ARITHMETIC_BRANCH,
+
+		//MOV into MH followed by LOAD or STORE
+		MEMORY_ACCESS,
+
+		//APND followed by any branch, like a loop writing characters
+		APPEND_BRANCH
+
+	}
+
+	//Which pair this is
+	public final Kind kind;
+
+	//The instruction that runs first and the one on the next executable line after it
+	public final Instruction first;
+	public final Instruction second;
+
+	public Superinstruction( Kind kind, Instruction first, Instruction second ) {
+		this.kind = kind;
+		this.first = first;
+		this.second = second;
+	}
+
+	//Returns the superinstruction two instructions make, or null if they don't make one
+	//The second instruction must be the one on the first's next executable line
+	public static Superinstruction fuse( Instruction first, Instruction second ) {
+
+		switch( first.opcode ) {
+		case ADD:
+		case SUB:
+			if( first.destination >= Registers.FIRST_REGULAR && isBranch( second.opcode ) ) {
+				return new Superinstruction( Kind.ARITHMETIC_BRANCH, first, second );
+			}
+			break;
+		case MOV:
+			if( first.destination == Registers.MH && ( second.opcode == Opcode.LOAD || second.opcode == Opcode.STORE ) ) {
+				return new Superinstruction( Kind.MEMORY_ACCESS, first, second );
+			}
+			break;
+		case APND:
+			if( isBranch( second.opcode ) ) {
+				return new Superinstruction( Kind.APPEND_BRANCH, first, second );
+			}
+			break;
+		default:
+			break;
+		}
+
+		return null;
+	}
+
+	//Returns whether an opcode is a branch
+	private static boolean isBranch( Opcode opcode ) {
+		switch( opcode ) {
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+		case BR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package core;
+import misc.Config;
+
+//Starts every program on the closure engine's operations and compiles its hot loops to bytecode as it finds them
+//A jump backwards is counted as the end of a loop, and once a line has been jumped back to Config.tierUpThreshold times
+//the lines from there to the jump are compiled on their own
+//The compiled loop runs until the program counter leaves it, then the operations take over again
+//Short programs never pay for compiling and long running loops still end up as native code
+public class TieredEngine implements ExecutionEngine {
+
+	//The program that was bound last and its operations, one per line
+	private Program boundProgram;
+	private ClosureEngine.Operation[] operations;
+
+	//How many times each line has been jumped back to
+	private int[] backEdgeCounts;
+
+	//The compiled loop starting at each line, if there is one
+	private CompiledProgram[] compiledLoops;
+
+	//Metrics, kept across programs
+	private int tierUps = 0;
+	private int failedTierUps = 0;
+	private long compileNanos = 0;
+	private long compiledSteps = 0;
+	private long totalSteps = 0;
+
+	//How many runs deep we are, since the machine runs a call's lines through us while we're running the line that called it
+	private int depth = 0;
+
+	@Override
+	public long run( Machine machine, long maxSteps ) {
+
+		//Bind each program the first time it is run
+		if( machine.program != boundProgram ) {
+			boundProgram = machine.program;
+			operations = ClosureEngine.bind( machine.program );
+			backEdgeCounts = new int[ operations.length ];
+			compiledLoops = new CompiledProgram[ operations.length ];
+		}
+
+		depth++;
+
+		ClosureEngine.Operation[] operations = this.operations;
+		int[] registers = machine.registers;
+		int lineCount = operations.length;
+
+		//The program counter is kept here while running and written back at the end
+		int pc = registers[ Registers.PC ];
+		long steps = 0;
+
+		//The budget and yield requests are only checked where loops close, the same as the closure engine
+		boolean isCheckDue = true;
+
+		while( !machine.halt && pc < lineCount ) {
+
+			if( isCheckDue ) {
+
+				if( steps >= maxSteps || machine.takeYieldRequest() ) {
+					break;
+				}
+
+				isCheckDue = maxSteps - steps < lineCount - pc;
+			}
+
+			ClosureEngine.Operation operation = operations[ pc ];
+
+			//Calls and returns go through the machine the same as on the closure engine, and never close a loop to compile
+			if( operation.isHandedBack ) {
+				registers[ Registers.PC ] = pc;
+				steps += machine.step( maxSteps - steps );
+				pc = registers[ Registers.PC ];
+				isCheckDue = true;
+				continue;
+			}
+
+			int next;
+
+			//The line of the last instruction run, which is where a loop ends if it jumped backwards
+			int last = pc;
+
+			if( operation.fused != null && ( !isCheckDue || maxSteps - steps > 1 ) ) {
+				next = operation.fused.execute( machine, registers );
+				last = operation.next;
+				steps += 2;
+
+				//If the first instruction trapped the second never ran
+				if( machine.halt && machine.trapLine == operation.line ) {
+					steps--;
+				}
+
+				operation = operation.fused;
+			}else {
+				next = operation.execute( machine, registers );
+				steps++;
+			}
+
+			if( operation.isLoopEnd ) {
+
+				isCheckDue = true;
+
+				//A jump backwards closes a loop
+				if( next <= last && next >= 0 && !machine.halt ) {
+
+					CompiledProgram loop = compiledLoops[ next ];
+
+					if( loop == null ) {
+						backEdgeCounts[ next ]++;
+						if( backEdgeCounts[ next ] == Config.tierUpThreshold ) {
+							loop = tierUp( next, last );
+						}
+					}
+
+					if( loop != null ) {
+						registers[ Registers.PC ] = next;
+
+						int taken = loop.run( machine, (int) Math.min( maxSteps - steps, Integer.MAX_VALUE ) );
+						steps += taken;
+						compiledSteps += taken;
+
+						next = registers[ Registers.PC ];
+					}
+
+				}
+
+			}
+
+			pc = next;
+		}
+
+		registers[ Registers.PC ] = pc;
+
+		//The steps of nested runs are already part of the run that called them
+		depth--;
+		if( depth == 0 ) {
+			totalSteps += steps;
+		}
+
+		return steps;
+	}
+
+	//Compiles the loop from firstLine to lastLine
+	//Returns null if it couldn't be compiled, in which case it stays on the operations for good
+	private CompiledProgram tierUp( int firstLine, int lastLine ) {
+
+		long start = System.nanoTime();
+		CompiledProgram loop = BytecodeCompiler.compile( boundProgram, firstLine, lastLine );
+		compileNanos += System.nanoTime() - start;
+
+		if( loop == null ) {
+			failedTierUps++;
+		}else {
+			tierUps++;
+			compiledLoops[ firstLine ] = loop;
+		}
+
+		return loop;
+	}
+
+	//Returns how many loops have been compiled
+	public int getTierUps() {
+		return tierUps;
+	}
+
+	//Returns how many hot loops couldn't be compiled
+	public int getFailedTierUps() {
+		return failedTierUps;
+	}
+
+	//Returns the total time spent compiling, in nanoseconds
+	public long getCompileNanos() {
+		return compileNanos;
+	}
+
+	//Returns how many steps were taken in compiled loops
+	public long getCompiledSteps() {
+		return compiledSteps;
+	}
+
+	//Returns how many steps were taken in total
+	public long getTotalSteps() {
+		return totalSteps;
+	}
+
+}
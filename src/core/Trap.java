@@ -0,0 +1,44 @@
+package core;
+import misc.Strings;
+
+//The faults that stop a running program
+//The first one raised halts the machine on the line that caused it, and anything after that in the same step is skipped
+public enum Trap {
+
+	//A line that couldn't be decoded was run, reported with the error found while decoding it
+	INVALID_INSTRUCTION,
+
+	//A result was outside the number range
+	NUMBER_OUT_OF_BOUNDS,
+
+	//The memory head was moved outside of main memory
+	MEMORY_HEAD_OUT_OF_BOUNDS,
+
+	//A character outside of printable ASCII was appended
+	BUFFER_VALUE_OUT_OF_ASCII_RANGE,
+
+	//A character was appended with no room left for it
+	STRING_BUFFER_FULL,
+
+	//The program counter was written with a line before the start of the program
+	INVALID_JUMP_TARGET;
+
+	//Returns the message reported for this trap on a machine, which holds the bounds it went past and the buffer it filled
+	public String getMessage( Machine machine ) {
+		switch( this ) {
+		case NUMBER_OUT_OF_BOUNDS:
+			return String.format( Strings.NumberOutOfBounds, machine.configuration.minNumberRange, machine.configuration.maxNumberRange );
+		case MEMORY_HEAD_OUT_OF_BOUNDS:
+			return String.format( Strings.MemoryHeadOutOfBounds, machine.mainMemory.length - 1 );
+		case BUFFER_VALUE_OUT_OF_ASCII_RANGE:
+			return Strings.BufferValueOutOfASCIIRange;
+		case STRING_BUFFER_FULL:
+			return String.format( Strings.StringBufferFull, machine.stringBuffer.length );
+		case INVALID_JUMP_TARGET:
+			return Strings.InvalidJumpTarget;
+		default:
+			return Strings.UnrecognizedOpcode;
+		}
+	}
+
+}
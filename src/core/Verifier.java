@@ -0,0 +1,142 @@
+package core;
+import java.util.Collections;
+import java.util.Comparator;
+
+import misc.Strings;
+
+//Checks an assembled program once, before it runs, so the engines never have to check the same things again
+//A program that passes has code on every executable line, only refers to registers that exist,
+//only holds literals within the number range and only branches onto code or the end of the program
+//Anything that fails is reported all at once and the program is never run
+public class Verifier {
+
+	//Verifies a program, adding a problem for every line that fails and marking the program verified if none do
+	public static void verify( Program program ) {
+
+		int lineCount = program.getLineCount();
+
+		for (int line = 0; line < lineCount; line++) {
+
+			//Lines that aren't code are only a problem if they're jumped onto, which is a trap while running
+			if( !program.isExecutable( line ) ) {
+				continue;
+			}
+
+			String problem = verify( program, program.instructions[ line ] );
+			if( problem != null ) {
+				program.errors.add( new Program.AssemblyError( line, problem ) );
+			}
+
+		}
+
+		//Reported in the order they appear
+		Collections.sort( program.errors, new Comparator<Program.AssemblyError>() {
+
+			@Override
+			public int compare( Program.AssemblyError a, Program.AssemblyError b ) {
+				return Integer.compare( a.line, b.line );
+			}
+
+		});
+
+		program.isVerified = program.errors.isEmpty();
+	}
+
+	//Returns what's wrong with an instruction, or null if nothing is
+	private static String verify( Program program, Instruction instruction ) {
+
+		switch( instruction.opcode ) {
+		case INVALID:
+			//The assembler already knows why it couldn't decode the line
+			return instruction.error;
+
+		case MOV:
+			return firstProblem(
+					verifySource( program.configuration, instruction.aRegister, instruction.aValue ),
+					verifyDestination( program.configuration, instruction.destination )
+					);
+
+		case ADD:
+		case SUB:
+		case ASL:
+		case ASR:
+			return firstProblem(
+					verifySource( program.configuration, instruction.aRegister, instruction.aValue ),
+					verifySource( program.configuration, instruction.bRegister, instruction.bValue ),
+					verifyDestination( program.configuration, instruction.destination )
+					);
+
+		case BNE:
+		case BEQ:
+		case BGT:
+		case BLT:
+			return firstProblem(
+					verifySource( program.configuration, instruction.aRegister, instruction.aValue ),
+					verifySource( program.configuration, instruction.bRegister, instruction.bValue ),
+					verifyTarget( program, instruction.target )
+					);
+
+		case BR:
+			return verifyTarget( program, instruction.target );
+
+		case LOAD:
+			return verifyDestination( program.configuration, instruction.destination );
+
+		case STORE:
+		case APND:
+			return verifySource( program.configuration, instruction.aRegister, instruction.aValue );
+
+		default:
+			//Everything else has no arguments
+			return null;
+		}
+
+	}
+
+	//Returns the first of some problems that isn't null, or null if they all are
+	private static String firstProblem( String... problems ) {
+		for( String problem : problems ) {
+			if( problem != null ) {
+				return problem;
+			}
+		}
+		return null;
+	}
+
+	//Checks an argument that is read from
+	private static String verifySource( MachineConfiguration configuration, int register, int literal ) {
+
+		if( register == Instruction.LITERAL ) {
+			if( literal > configuration.maxNumberRange || literal < configuration.minNumberRange ) {
+				return String.format( Strings.NumberOutOfBounds, configuration.minNumberRange, configuration.maxNumberRange );
+			}
+			return null;
+		}
+
+		if( register < 0 || register >= configuration.getRegisterSlots() ) {
+			return Strings.InvalidRegisterReference;
+		}
+
+		return null;
+	}
+
+	//Checks a register that is written to
+	private static String verifyDestination( MachineConfiguration configuration, int register ) {
+		if( register < 0 || register >= configuration.getRegisterSlots() ) {
+			return Strings.ArgumentIsNotRegister;
+		}
+		return null;
+	}
+
+	//Checks that a branch lands on code, or on the end of the program
+	private static String verifyTarget( Program program, int target ) {
+		if( target == program.getLineCount() ) {
+			return null;
+		}
+		if( target < 0 || target > program.getLineCount() || !program.isExecutable( target ) ) {
+			return Strings.InvalidLabelReference;
+		}
+		return null;
+	}
+
+}
@@ -1,23 +1,39 @@
 package core;
+import java.util.Arrays;
+
 import javax.swing.UnsupportedLookAndFeelException;
 
 public class primary {
 
-	public static MainWindow mainWindow;
-	
-	public static ProcessingLogic processingLogic;
-	
 	public static void main(String[] args) throws ClassNotFoundException, InstantiationException, IllegalAccessException, UnsupportedLookAndFeelException {
 		
+		//--batch means running many files at once without a window
+		if( args.length > 0 && args[ 0 ].equals( "--batch" ) ) {
+			BatchRunner.main( Arrays.copyOfRange( args, 1, args.length ) );
+			return;
+		}
+		
+		//--serve means running code sent over HTTP without a window
+		if( args.length > 0 && args[ 0 ].equals( "--serve" ) ) {
+			ExecutionServer.main( Arrays.copyOfRange( args, 1, args.length ) );
+			return;
+		}
+		
+		//Anything else on the command line means we're running a file without a window
+		if( args.length > 0 ) {
+			HeadlessRunner.main( args );
+			return;
+		}
+		
 		
 		//Instantiate main sections
 		//Main window
-		mainWindow = new MainWindow();
+		MainWindow mainWindow = new MainWindow();
 		//Main logic
-		processingLogic = new ProcessingLogic();
+		ProcessingLogic processingLogic = new ProcessingLogic( mainWindow );
 		
 		//Start main sections
-		mainWindow.start();
+		mainWindow.start( processingLogic );
 		processingLogic.start();
 		
 	}
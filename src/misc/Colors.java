@@ -0,0 +1,13 @@
+package misc;
+import java.awt.Color;
+
+//Colors used by the window, kept apart from Config so running programs without a window never loads AWT
+public class Colors {
+
+	//Highlighted line color
+	public static Color highlightedColor = Color.GRAY;
+	
+	//Highlighted memory address color
+	public static Color highlightedMemoryAddressColor = Color.RED;
+
+}
@@ -1,6 +1,6 @@
 package misc;
-import java.awt.Color;
 
+//Settings for everything but the window's colors, which are in Colors
 public class Config {
 
 	/*
@@ -13,18 +13,50 @@ public class Config {
 	//The file extension to expect
 	public static String fileExtension = "A1";
 	
-	//Highlighted line color
-	public static Color highlightedColor = Color.GRAY;
-	
-	//Highlighted memory address color
-	public static Color highlightedMemoryAddressColor = Color.RED;
-	
 	//The font size
 	public static int fontSize = 18;
 	
 	//Path to the icons
 	public static String iconPath = "resources/icons/";
 	
+	/*
+	 * Console Settings
+	 */
+	
+	//The most lines the console holds, the oldest are dropped as new ones are printed
+	public static int consoleLineLimit = 10000;
+	
+	//A file everything printed to the console is also written to, or null for none
+	public static String consoleFile = null;
+	
+	/*
+	 * Execution Settings
+	 */
+	
+	//How many steps per second fast forwarding takes when not in turbo mode
+	public static int stepsPerSecond = 10;
+	
+	//How many times per second the UI is refreshed while fast forwarding in turbo mode
+	public static int uiRefreshRate = 30;
+	
+	//What runs programs when fast forwarding, "interpreter", "closure", "bytecode" or "tiered"
+	//Single steps are always interpreted
+	public static String engine = "tiered";
+	
+	//How many times the tiered engine sees a loop run before compiling it
+	public static int tierUpThreshold = 1000;
+	
+	//Whether calls to subroutines that only do arithmetic on registers are remembered, so calling one again with the same
+	//inputs skips straight to its result, found by SubroutineAnalysis when a program is assembled
+	//A call counts as a single step either way, and single steps always run every line
+	public static boolean memoizeSubroutines = true;
+	
+	//The most subroutine results remembered at once, the least recently used are forgotten first
+	public static int subroutineCacheSize = 4096;
+	
+	//The most steps a call is run for to remember its result, anything longer carries on running as usual
+	public static int subroutineStepLimit = 1000000;
+	
 	/*
 	 * Compiler Settings
 	 * 
@@ -40,7 +72,19 @@ public class Config {
 	//The size of main memory
 	public static int mainMemoryLength = 10000;
 	
+	//Whether programs are run through the Optimizer, which folds constant arithmetic, removes moves that do nothing
+	//and unreachable code and sends jumps that land on a BR straight to where it goes
+	//Programs take fewer steps but still run, stop and report errors on the same lines
+	public static boolean optimize = false;
+	
+	//The most lines of assembled programs a ProgramCache keeps in memory, the least recently used are forgotten first
+	public static int programCacheLines = 200000;
+	
+	//A folder assembled programs are also kept in, so they're still there the next time A100 runs, or null for none
+	public static String programCacheFolder = null;
+	
 	//The size of the string buffer, in characters
+	//Programs that print a lot of text at once can raise this instead of using PRNT every 256 characters
 	public static int stringBufferSize = 256;
 
 }
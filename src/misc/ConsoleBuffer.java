@@ -0,0 +1,203 @@
+package misc;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JTextArea;
+import javax.swing.text.Element;
+
+//The console's lines, kept in a ring so only the most recent ones are ever held no matter how much is printed
+//Lines can be added from any thread, and the text area showing them is brought up to date in one go with flushTo
+//Everything added can also be copied to a file as it comes in
+public class ConsoleBuffer {
+
+	//The lines, oldest first starting at firstLine and wrapping around
+	private String[] lines;
+	private int firstLine = 0;
+	private int lineCount = 0;
+
+	//How many of the newest lines haven't been shown yet
+	private int newLineCount = 0;
+
+	//Whether the text area has to be emptied before the new lines are shown
+	private boolean isCleared = false;
+
+	//Where everything is copied to, or null if it isn't
+	private FileChannel teeChannel;
+	private ByteBuffer teeBuffer;
+	private CharsetEncoder teeEncoder;
+
+	public ConsoleBuffer( int lineLimit ) {
+		lines = new String[ lineLimit ];
+	}
+
+	//Adds a line, dropping the oldest one if the console is full
+	public synchronized void append( String line ) {
+
+		if( lineCount < lines.length ) {
+			lines[ ( firstLine + lineCount ) % lines.length ] = line;
+			lineCount++;
+		}else {
+			lines[ firstLine ] = line;
+			firstLine = ( firstLine + 1 ) % lines.length;
+		}
+
+		newLineCount = Math.min( newLineCount + 1, lines.length );
+
+		if( teeChannel != null ) {
+			tee( line );
+		}
+
+	}
+
+	//Removes every line
+	//Lines already written to the file stay there
+	public synchronized void clear() {
+		firstLine = 0;
+		lineCount = 0;
+		newLineCount = 0;
+		isCleared = true;
+	}
+
+	//Brings a text area up to date, only ever called on the Swing thread
+	//The new lines are added all at once and the oldest are removed so it never holds more than the buffer does
+	public void flushTo( JTextArea textArea ) {
+
+		String text;
+		boolean isReplacing;
+
+		synchronized( this ) {
+
+			if( newLineCount == 0 && !isCleared ) {
+				return;
+			}
+
+			StringBuilder builder = new StringBuilder();
+			for (int i = lineCount - newLineCount; i < lineCount; i++) {
+				builder.append( lines[ ( firstLine + i ) % lines.length ] ).append( '\n' );
+			}
+
+			text = builder.toString();
+			isReplacing = isCleared;
+
+			newLineCount = 0;
+			isCleared = false;
+
+		}
+
+		if( isReplacing ) {
+			textArea.setText( text );
+		}else {
+			textArea.append( text );
+		}
+
+		//The text ends with a newline, so the last line in the text area is always empty and isn't counted
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int extraLines = root.getElementCount() - 1 - lines.length;
+		if( extraLines > 0 ) {
+			textArea.replaceRange( "", 0, root.getElement( extraLines ).getStartOffset() );
+		}
+
+	}
+
+	//Starts copying every line added to a file, replacing whatever was in it
+	public synchronized void teeTo( Path path ) throws IOException {
+
+		closeTee();
+
+		teeChannel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+		teeBuffer = ByteBuffer.allocateDirect( 1 << 16 );
+		teeEncoder = Charset.forName( "UTF-8" ).newEncoder()
+				.onMalformedInput( CodingErrorAction.REPLACE )
+				.onUnmappableCharacter( CodingErrorAction.REPLACE );
+
+	}
+
+	//Writes whatever is waiting to go to the file
+	public synchronized void flushTee() {
+
+		if( teeChannel == null ) {
+			return;
+		}
+
+		try {
+			writeTeeBuffer();
+		} catch ( IOException e ) {
+			stopTee( e );
+		}
+
+	}
+
+	//Writes whatever is waiting and stops copying to the file
+	public synchronized void closeTee() {
+
+		if( teeChannel == null ) {
+			return;
+		}
+
+		try {
+			writeTeeBuffer();
+			teeChannel.close();
+		} catch ( IOException e ) {
+			stopTee( e );
+		}
+
+		teeChannel = null;
+
+	}
+
+	//Encodes a line into the file's buffer, writing the buffer out whenever it fills up
+	private void tee( String line ) {
+
+		try {
+
+			CharBuffer chars = CharBuffer.wrap( line );
+			while( teeEncoder.encode( chars, teeBuffer, true ).isOverflow() ) {
+				writeTeeBuffer();
+			}
+			teeEncoder.reset();
+
+			if( !teeBuffer.hasRemaining() ) {
+				writeTeeBuffer();
+			}
+			teeBuffer.put( (byte) '\n' );
+
+		} catch ( IOException e ) {
+			stopTee( e );
+		}
+
+	}
+
+	//Writes the file's buffer out and empties it
+	private void writeTeeBuffer() throws IOException {
+
+		teeBuffer.flip();
+		while( teeBuffer.hasRemaining() ) {
+			teeChannel.write( teeBuffer );
+		}
+		teeBuffer.clear();
+
+	}
+
+	//Gives up on the file after it fails and says so in the console
+	private void stopTee( IOException e ) {
+
+		try {
+			teeChannel.close();
+		} catch ( IOException closeException ) {
+			//It already failed, there's nothing more to do
+		}
+
+		teeChannel = null;
+
+		append( Strings.ConsoleFileFailed + e.getMessage() );
+
+	}
+
+}
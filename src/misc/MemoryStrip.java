@@ -0,0 +1,170 @@
+package misc;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.UIManager;
+
+//A horizontal strip of named cells holding numbers, drawn straight from an int[]
+//Only the cells that can be seen are ever painted and only the cells that change are repainted,
+//so it stays fast with millions of cells where a component per cell would not
+//Meant to be the view of a JScrollPane
+public class MemoryStrip extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	//The values shown in each cell
+	private int[] values;
+
+	//Each cell is named this followed by its index
+	private String namePrefix;
+
+	//The highlighted cell, or -1 if there isn't one
+	private int highlightedCell = -1;
+
+	//The size of each cell in pixels
+	private int cellWidth;
+	private int cellHeight = 50;
+
+	public MemoryStrip( int length, String namePrefix, Font font ) {
+		this( length, namePrefix, font, 75, String.valueOf( Short.MIN_VALUE ) );
+	}
+
+	//Cells are at least minimumCellWidth wide and wide enough to fit widestText as a value
+	public MemoryStrip( int length, String namePrefix, Font font, int minimumCellWidth, String widestText ) {
+		this.values = new int[ length ];
+		this.namePrefix = namePrefix;
+
+		setFont( font );
+		setOpaque( true );
+		setBackground( UIManager.getColor( "Panel.background" ) );
+		setForeground( UIManager.getColor( "Label.foreground" ) );
+
+		//Wide enough for the longest name and the longest number
+		FontMetrics metrics = getFontMetrics( font );
+		int widestTextWidth = Math.max( metrics.stringWidth( namePrefix + ( length - 1 ) ), metrics.stringWidth( widestText ) );
+		cellWidth = Math.max( minimumCellWidth, widestTextWidth + 10 );
+
+		setPreferredSize( new Dimension( (int) Math.min( (long) cellWidth * length, Integer.MAX_VALUE ), cellHeight ) );
+	}
+
+	//Returns the number of cells
+	public int getLength() {
+		return values.length;
+	}
+
+	//Returns the value in a cell
+	public int getValue( int index ) {
+		return values[ index ];
+	}
+
+	//Changes the value in a cell
+	public void setValue( int index, int value ) {
+		if( values[ index ] != value ) {
+			values[ index ] = value;
+			repaintCell( index );
+		}
+	}
+
+	//Returns the name shown above a cell's value
+	protected String getCellName( int index ) {
+		return namePrefix + index;
+	}
+
+	//Returns the text shown for a cell's value
+	protected String getCellText( int index ) {
+		return String.valueOf( values[ index ] );
+	}
+
+	//Highlights a cell, or nothing if the index is -1
+	public void highlightCell( int index ) {
+		if( index == highlightedCell ) {
+			return;
+		}
+
+		if( highlightedCell != -1 ) {
+			repaintCell( highlightedCell );
+		}
+
+		highlightedCell = index;
+
+		if( highlightedCell != -1 ) {
+			repaintCell( highlightedCell );
+		}
+	}
+
+	//Scrolls the enclosing scroll pane so a cell is at the left edge, or as close as it can get
+	public void scrollToCell( int index ) {
+		if( !( getParent() instanceof JViewport ) ) {
+			return;
+		}
+
+		JViewport viewport = (JViewport) getParent();
+		long x = (long) index * cellWidth;
+		long maxX = Math.max( 0, getWidth() - viewport.getWidth() );
+
+		viewport.setViewPosition( new Point( (int) Math.min( x, maxX ), viewport.getViewPosition().y ) );
+	}
+
+	//Repaints a single cell
+	private void repaintCell( int index ) {
+		long x = (long) index * cellWidth;
+		if( x < Integer.MAX_VALUE ) {
+			repaint( (int) x, 0, cellWidth, getHeight() );
+		}
+	}
+
+	@Override
+	protected void paintComponent( Graphics g ) {
+
+		Rectangle clip = g.getClipBounds();
+		if( clip == null ) {
+			clip = new Rectangle( 0, 0, getWidth(), getHeight() );
+		}
+
+		g.setColor( getBackground() );
+		g.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+		g.setFont( getFont() );
+		FontMetrics metrics = g.getFontMetrics();
+		int height = getHeight();
+
+		//Only the cells that overlap what's being painted
+		int firstCell = Math.max( 0, clip.x / cellWidth );
+		int lastCell = Math.min( values.length - 1, ( clip.x + clip.width ) / cellWidth );
+
+		for (int i = firstCell; i <= lastCell; i++) {
+
+			int x = i * cellWidth;
+
+			//The border, thicker and colored when highlighted
+			if( i == highlightedCell ) {
+				g.setColor( Colors.highlightedMemoryAddressColor );
+				for (int j = 0; j < 3; j++) {
+					g.drawRect( x + j, j, cellWidth - 1 - 2 * j, height - 1 - 2 * j );
+				}
+			}else {
+				g.setColor( Color.BLACK );
+				g.drawRect( x, 0, cellWidth - 1, height - 1 );
+			}
+
+			//The name along the top and the value along the bottom, both centered
+			g.setColor( getForeground() );
+
+			String name = getCellName( i );
+			g.drawString( name, x + ( cellWidth - metrics.stringWidth( name ) ) / 2, 3 + metrics.getAscent() );
+
+			String text = getCellText( i );
+			g.drawString( text, x + ( cellWidth - metrics.stringWidth( text ) ) / 2, height - 3 - metrics.getDescent() );
+
+		}
+
+	}
+
+}
@@ -1,9 +1,11 @@
 package misc;
 public class Strings {
 	
-	public static String NumberOutOfBounds = "A number was outside the bounds [" + Config.minNumberRange + ", " + Config.maxNumberRange  + "]!";
+	//Filled in with the bounds of the machine it happened on
+	public static String NumberOutOfBounds = "A number was outside the bounds [%d, %d]!";
 	
-	public static String MemoryHeadOutOfBounds = "The main memory read/write head is outside the bounds [0, " + ( Config.mainMemoryLength - 1 ) + "]!";
+	//Filled in with the last address of the machine it happened on
+	public static String MemoryHeadOutOfBounds = "The main memory read/write head is outside the bounds [0, %d]!";
 	
 	public static String ArgumentIsNotRegister = "An argument was expected to be a register but was not or was out of bounds!";
 	
@@ -20,6 +22,8 @@ public class Strings {
 	public static String LabelContainedSpaces = "A label contained spaces!";
 	
 	public static String EmptyFile = "You cannot run a file without executable commands!";
+
+	public static String InvalidJumpTarget = "The program counter was moved to a line before the start of the program!";
 	
 	/*
 	 * String buffer errors
@@ -27,6 +31,16 @@ public class Strings {
 	
 	public static String BufferValueOutOfASCIIRange = "A value outside of the range [32, 126] was written to the string buffer!";
 	
+	//Filled in with the size of the buffer that filled up
+	public static String StringBufferFull = "The string buffer is full, it only holds %d characters!";
+	
+	
+	/*
+	 * Console messages
+	 */
+	
+	public static String ConsoleFileFailed = "Could not copy the console to a file: ";
+	
 	
 	/*
 	 * Exit condition messages
@@ -35,4 +49,6 @@ public class Strings {
 	
 	public static String ExitNormal = "Execution finished";
 	
+	public static String ExitStepLimit = "Execution stopped after reaching the step limit";
+	
 }